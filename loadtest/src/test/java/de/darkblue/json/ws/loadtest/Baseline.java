@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws.loadtest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * The stored results of earlier runs that new results are compared
+ * against. For every scenario and arrival rate the p99 latency and the bytes
+ * allocated per request are stored, e.g. small-echo@500rps.p99Micros, so that
+ * runs with a scaled rate are only compared with runs at the same rate.
+ *
+ * @author Florian Frankenberger
+ */
+class Baseline {
+
+    private static final String P99_MICROS = ".p99Micros";
+    private static final String ALLOCATED_BYTES_PER_REQUEST = ".allocatedBytesPerRequest";
+
+    private final File file;
+    private final Properties values = new Properties();
+
+    private Baseline(File file) {
+        this.file = file;
+    }
+
+    public static Baseline load(File file) throws IOException {
+        final Baseline baseline = new Baseline(file);
+        if (file.exists()) {
+            try (InputStream in = new FileInputStream(file)) {
+                baseline.values.load(in);
+            }
+        }
+        return baseline;
+    }
+
+    /**
+     * compares the result with the stored values of its scenario. Values
+     * without a stored counterpart are not compared.
+     *
+     * @param result
+     * @param latencyBudget the allowed increase of the p99 latency, e.g. 0.5 for 50%
+     * @param allocationBudget the allowed increase of the allocations per request
+     * @return a description of every value that exceeded its budget
+     */
+    public List<String> check(ScenarioResult result, double latencyBudget, double allocationBudget) {
+        final List<String> regressions = new ArrayList<>();
+        final String name = key(result.getScenario());
+        check(regressions, name + P99_MICROS, result.getP99Micros(), latencyBudget);
+        if (result.getAllocatedBytesPerRequest() >= 0) {
+            check(regressions, name + ALLOCATED_BYTES_PER_REQUEST, result.getAllocatedBytesPerRequest(), allocationBudget);
+        }
+        return regressions;
+    }
+
+    private void check(List<String> regressions, String key, long value, double budget) {
+        final String stored = values.getProperty(key);
+        if (stored == null) {
+            return;
+        }
+        final long baseline = Long.parseLong(stored.trim());
+        final long limit = (long) (baseline * (1 + budget));
+        if (value > limit) {
+            regressions.add(String.format(Locale.ROOT, "%s is %d, baseline %d, limit %d (+%.0f%%)",
+                    key, value, baseline, limit, budget * 100));
+        }
+    }
+
+    /**
+     * @param scenario
+     * @return true if values are stored for the scenario at its arrival rate
+     */
+    public boolean contains(Scenario scenario) {
+        return values.containsKey(key(scenario) + P99_MICROS);
+    }
+
+    public void update(ScenarioResult result) {
+        final String name = key(result.getScenario());
+        values.setProperty(name + P99_MICROS, String.valueOf(result.getP99Micros()));
+        if (result.getAllocatedBytesPerRequest() >= 0) {
+            values.setProperty(name + ALLOCATED_BYTES_PER_REQUEST, String.valueOf(result.getAllocatedBytesPerRequest()));
+        }
+    }
+
+    /**
+     * writes the values sorted by key, so that updates result in small diffs
+     */
+    public void store() throws IOException {
+        try (PrintWriter out = new PrintWriter(file, "ISO-8859-1")) {
+            out.println("# Load test baseline, update with mvn test -Dloadtest.updateBaseline=true");
+            out.println("# Measured with " + Runtime.getRuntime().availableProcessors() + " cores on "
+                    + System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+            for (String key : new TreeSet<>(values.stringPropertyNames())) {
+                out.println(key + "=" + values.getProperty(key));
+            }
+        }
+    }
+
+    private static String key(Scenario scenario) {
+        return scenario.getName() + "@" + scenario.getRequestsPerSecond() + "rps";
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+}
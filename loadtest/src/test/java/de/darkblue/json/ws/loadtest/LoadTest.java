@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws.loadtest;
+
+import de.darkblue.json.ws.WebServiceClient;
+import de.darkblue.json.ws.WebServiceServer;
+import de.darkblue.json.ws.loadtest.SampleService.Sample;
+import de.darkblue.json.ws.loadtest.SampleService.SampleServiceImpl;
+import de.darkblue.json.ws.loadtest.Scenario.Operation;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the load scenarios against a server on the loopback interface and
+ * compares the results with the stored baseline. The run can be configured
+ * with these system properties:
+ * <ul>
+ * <li>loadtest.scenarios - comma separated names of the scenarios to run, all by default</li>
+ * <li>loadtest.rateScale - factor the arrival rate of every scenario is multiplied with</li>
+ * <li>loadtest.warmUpSeconds, loadtest.durationSeconds - time per scenario run</li>
+ * <li>loadtest.repetitions - runs per scenario, the run with the median p99 latency is
+ *     compared with the baseline. The slowest run is stored as baseline, so that a lucky
+ *     run doesn't end up as a reference that can hardly be met again.</li>
+ * <li>loadtest.baseline - the baseline file. By default there is one per number of cores,
+ *     e.g. baseline-4cores.properties, as the results depend on the machine. The number of
+ *     cores (and with it the number of jetty's acceptor and selector threads) can be set with
+ *     the maven property loadtest.cores.</li>
+ * <li>loadtest.latencyBudget, loadtest.allocationBudget - allowed increase over the
+ *     baseline, e.g. 0.5 for 50%</li>
+ * <li>loadtest.updateBaseline - stores the results as new baseline instead of failing</li>
+ * <li>loadtest.allowMissingBaseline - reports scenarios without a stored baseline instead of
+ *     failing, e.g. for exploratory runs with a scaled rate</li>
+ * <li>loadtest.soakMinutes - enables the soak test with the given duration</li>
+ * </ul>
+ *
+ * @author Florian Frankenberger
+ */
+public class LoadTest {
+
+    private static final int PORT = Integer.getInteger("loadtest.port", 33260);
+
+    /**
+     * the share of the arrival rate that must be handled. Below that the
+     * server is overloaded and the latencies only depend on how long the
+     * requests queue up.
+     */
+    private static final double MIN_THROUGHPUT = 0.9;
+
+    private static final List<Scenario> SCENARIOS = Arrays.asList(
+            new Scenario("small-echo", Operation.ECHO, 1, 500, 8),
+            new Scenario("small-echo-burst", Operation.ECHO, 1, 2000, 32),
+            new Scenario("medium-summarize", Operation.SUMMARIZE, 100, 250, 16),
+            new Scenario("large-echo", Operation.ECHO, 2000, 10, 8)
+    );
+
+    private static WebServiceServer server;
+    private static Sample sample;
+
+    @BeforeClass
+    public static void startServer() throws IOException {
+        server = new WebServiceServer();
+        server.setHttpPort(PORT);
+        server.setShutdownTimeout(5, TimeUnit.SECONDS);
+        server.addServiceImplementation(new SampleServiceImpl());
+        server.start(false);
+
+        WebServiceClient client = new WebServiceClient();
+        sample = client.proxyRemoteService("http://localhost:" + PORT + SampleService.PATH, Sample.class);
+
+        System.out.println("Load test with " + Runtime.getRuntime().availableProcessors() + " cores on "
+                + System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+    }
+
+    @AfterClass
+    public static void stopServer() {
+        server.stop();
+    }
+
+    @Test
+    public void scenarios() throws IOException, InterruptedException {
+        final String selected = System.getProperty("loadtest.scenarios");
+        final double rateScale = Double.parseDouble(System.getProperty("loadtest.rateScale", "1"));
+        final int repetitions = Integer.getInteger("loadtest.repetitions", 3);
+        final OpenLoopDriver driver = new OpenLoopDriver(sample,
+                Long.getLong("loadtest.warmUpSeconds", 2), Long.getLong("loadtest.durationSeconds", 4), TimeUnit.SECONDS);
+        final Baseline baseline = Baseline.load(new File(System.getProperty("loadtest.baseline",
+                "baseline-" + Runtime.getRuntime().availableProcessors() + "cores.properties")));
+        final boolean updateBaseline = Boolean.getBoolean("loadtest.updateBaseline");
+        final boolean allowMissingBaseline = Boolean.getBoolean("loadtest.allowMissingBaseline");
+
+        final List<String> regressions = new ArrayList<>();
+        for (Scenario scenario : SCENARIOS) {
+            if (selected != null && !Arrays.asList(selected.split(",")).contains(scenario.getName())) {
+                continue;
+            }
+
+            final List<ScenarioResult> runs = new ArrayList<>();
+            long errors = 0;
+            for (int i = 0; i < repetitions; i++) {
+                final ScenarioResult run = driver.run(scenario.scaleRate(rateScale));
+                errors += run.getErrors();
+                runs.add(run);
+            }
+            runs.sort(Comparator.comparingLong(ScenarioResult::getP99Micros));
+            final ScenarioResult result = runs.get(runs.size() / 2);
+
+            System.out.println(result.report());
+            if (errors > 0) {
+                regressions.add(scenario.getName() + " had " + errors + " failed requests");
+            }
+            if (result.getThroughput() < result.getScenario().getRequestsPerSecond() * MIN_THROUGHPUT) {
+                regressions.add(String.format(Locale.ROOT, "%s could not sustain %d req/s, only %.1f req/s were handled",
+                        scenario.getName(), result.getScenario().getRequestsPerSecond(), result.getThroughput()));
+            }
+            if (updateBaseline) {
+                baseline.update(runs.get(runs.size() - 1));
+            } else
+                if (baseline.contains(result.getScenario())) {
+                    regressions.addAll(baseline.check(result, latencyBudget(), allocationBudget()));
+                } else
+                    if (allowMissingBaseline) {
+                        System.out.println("No baseline for " + result.getScenario() + ", the results are not compared");
+                    } else {
+                        regressions.add("No baseline for " + result.getScenario()
+                                + ", record one with -Dloadtest.updateBaseline=true");
+                    }
+        }
+
+        if (updateBaseline) {
+            baseline.store();
+            System.out.println("Stored baseline in " + baseline.getFile().getAbsolutePath());
+        }
+        assertTrue("Regressions against " + baseline.getFile() + ":\n  " + String.join("\n  ", regressions),
+                regressions.isEmpty());
+    }
+
+    /**
+     * runs a moderate load for a long time and reports every minute on its own.
+     * Fails if requests fail or if the latency of the last minute exceeds the
+     * one of the first minute by more than the latency budget, which hints at
+     * leaks or growing caches.
+     */
+    @Test
+    public void soak() throws InterruptedException {
+        final long minutes = Long.getLong("loadtest.soakMinutes", 0);
+        Assume.assumeTrue(minutes > 0);
+
+        final Scenario scenario = new Scenario("soak", Operation.ECHO, 100, 200, 16);
+        ScenarioResult first = null, last = null;
+        long errors = 0;
+        for (long minute = 0; minute < minutes; minute++) {
+            final OpenLoopDriver driver = new OpenLoopDriver(sample, minute == 0 ? 10 : 0, 60, TimeUnit.SECONDS);
+            last = driver.run(scenario);
+            if (first == null) {
+                first = last;
+            }
+            errors += last.getErrors();
+            System.out.println("minute " + (minute + 1) + ": " + last.report());
+        }
+
+        assertTrue(errors + " requests failed", errors == 0);
+        final long limit = (long) (first.getP99Micros() * (1 + latencyBudget()));
+        assertTrue("p99 latency grew from " + first.getP99Micros() + " us to " + last.getP99Micros() + " us",
+                last.getP99Micros() <= limit);
+    }
+
+    private static double latencyBudget() {
+        return Double.parseDouble(System.getProperty("loadtest.latencyBudget", "1.0"));
+    }
+
+    private static double allocationBudget() {
+        return Double.parseDouble(System.getProperty("loadtest.allocationBudget", "0.2"));
+    }
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws.loadtest;
+
+import de.darkblue.json.ws.loadtest.SampleService.Document;
+import de.darkblue.json.ws.loadtest.SampleService.Sample;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends requests at a constant arrival rate, no matter how long the previous
+ * requests take (open loop). The latency of a request is measured from the
+ * time it was supposed to be sent, not from the time a client thread got
+ * around to send it. A stalled server therefore shows up with the latency all
+ * the queued requests experience instead of being hidden by the clients
+ * waiting for it (coordinated omission).
+ *
+ * @author Florian Frankenberger
+ */
+class OpenLoopDriver {
+
+    private static final Logger LOGGER = Logger.getLogger(OpenLoopDriver.class.getName());
+
+    private final Sample sample;
+    private final long warmUpNanos;
+    private final long durationNanos;
+
+    /**
+     * @param sample the client proxy of the sample service
+     * @param warmUp the time requests are sent before the measurement starts
+     * @param duration the time requests are measured
+     * @param unit
+     */
+    public OpenLoopDriver(Sample sample, long warmUp, long duration, TimeUnit unit) {
+        this.sample = sample;
+        this.warmUpNanos = unit.toNanos(warmUp);
+        this.durationNanos = unit.toNanos(duration);
+    }
+
+    public ScenarioResult run(Scenario scenario) throws InterruptedException {
+        final Document document = SampleService.createDocument(scenario.getItemsPerDocument(), 42);
+        final ThreadPoolExecutor clients = new ThreadPoolExecutor(scenario.getClientThreads(), scenario.getClientThreads(),
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        clients.prestartAllCoreThreads();
+
+        try {
+            send(scenario, document, clients, warmUpNanos, new LatencyHistogram(), new LongAdder());
+
+            final LatencyHistogram latencies = new LatencyHistogram();
+            final LongAdder errors = new LongAdder();
+            final long allocatedBefore = allocatedBytes();
+            final long start = System.nanoTime();
+            send(scenario, document, clients, durationNanos, latencies, errors);
+            final long elapsed = System.nanoTime() - start;
+            final long allocatedAfter = allocatedBytes();
+
+            return new ScenarioResult(scenario, latencies, errors.sum(), elapsed,
+                    allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore);
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    /**
+     * sends requests for the given time and waits for all of them to complete
+     */
+    private void send(Scenario scenario, Document document, ThreadPoolExecutor clients, long nanos,
+            LatencyHistogram latencies, LongAdder errors) throws InterruptedException {
+        final long interval = TimeUnit.SECONDS.toNanos(1) / scenario.getRequestsPerSecond();
+        final int requests = (int) (nanos / interval);
+        final CountDownLatch completed = new CountDownLatch(requests);
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            final long intendedStart = start + i * interval;
+            long now;
+            while ((now = System.nanoTime()) < intendedStart) {
+                LockSupport.parkNanos(intendedStart - now);
+            }
+
+            clients.execute(() -> {
+                try {
+                    scenario.getOperation().call(sample, document);
+                    latencies.record(System.nanoTime() - intendedStart);
+                } catch (RuntimeException e) {
+                    errors.increment();
+                    LOGGER.log(Level.FINE, "Request failed", e);
+                } finally {
+                    completed.countDown();
+                }
+            });
+        }
+        completed.await();
+    }
+
+    /**
+     * @return the bytes allocated by all live threads so far or -1 if
+     *         this is not supported by the JVM
+     */
+    private static long allocatedBytes() {
+        final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported() || !allocationBean.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+
+        long total = 0;
+        for (long bytes : allocationBean.getThreadAllocatedBytes(allocationBean.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+}
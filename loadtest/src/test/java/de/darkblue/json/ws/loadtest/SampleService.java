@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws.loadtest;
+
+import de.darkblue.json.ws.RemoteService;
+import de.darkblue.json.ws.WebService;
+import de.darkblue.json.ws.WebServiceMethod;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The sample service the load test is driven against. Its payloads are made
+ * of a configurable number of items, so the share of (de)serialization and
+ * compression in a request can be scaled.
+ *
+ * @author Florian Frankenberger
+ */
+public class SampleService {
+
+    public static final String PATH = "/sample";
+
+    public static class Item {
+        public String name;
+        public long value;
+        public double score;
+        public List<String> tags = new ArrayList<>();
+    }
+
+    public static class Document {
+        public String id;
+        public List<Item> items = new ArrayList<>();
+    }
+
+    public static class Summary {
+        public String id;
+        public int items;
+        public long totalValue;
+        public double maxScore;
+    }
+
+    @WebService(path = PATH)
+    public static class SampleServiceImpl {
+
+        /**
+         * answers with the request itself, so request and response are of equal size
+         */
+        @WebServiceMethod()
+        public Document echo(Document document) {
+            return document;
+        }
+
+        /**
+         * answers with a small summary of the request
+         */
+        @WebServiceMethod()
+        public Summary summarize(Document document) {
+            Summary summary = new Summary();
+            summary.id = document.id;
+            summary.items = document.items.size();
+            for (Item item : document.items) {
+                summary.totalValue += item.value;
+                summary.maxScore = Math.max(summary.maxScore, item.score);
+            }
+            return summary;
+        }
+    }
+
+    @RemoteService
+    public static interface Sample {
+
+        Document echo(Document document);
+
+        Summary summarize(Document document);
+
+    }
+
+    private SampleService() {
+    }
+
+    /**
+     * creates a document with the given number of items. The same
+     * seed always results in the same document.
+     *
+     * @param items
+     * @param seed
+     * @return
+     */
+    public static Document createDocument(int items, long seed) {
+        final Random random = new Random(seed);
+        final Document document = new Document();
+        document.id = Long.toHexString(random.nextLong());
+        for (int i = 0; i < items; i++) {
+            Item item = new Item();
+            item.name = "item-" + Long.toHexString(random.nextLong());
+            item.value = random.nextInt(100000);
+            item.score = random.nextDouble();
+            for (int j = 0; j < 3; j++) {
+                item.tags.add("tag" + random.nextInt(50));
+            }
+            document.items.add(item);
+        }
+        return document;
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws.loadtest;
+
+import de.darkblue.json.ws.loadtest.SampleService.Document;
+import de.darkblue.json.ws.loadtest.SampleService.Sample;
+import java.util.function.BiConsumer;
+
+/**
+ * A load scenario: one operation of the sample service called with a
+ * fixed payload at a constant rate.
+ *
+ * @author Florian Frankenberger
+ */
+class Scenario {
+
+    public static enum Operation {
+        ECHO(Sample::echo),
+        SUMMARIZE(Sample::summarize);
+
+        private final BiConsumer<Sample, Document> call;
+
+        private Operation(BiConsumer<Sample, Document> call) {
+            this.call = call;
+        }
+
+        void call(Sample sample, Document document) {
+            call.accept(sample, document);
+        }
+    }
+
+    private final String name;
+    private final Operation operation;
+    private final int itemsPerDocument;
+    private final int requestsPerSecond;
+    private final int clientThreads;
+
+    /**
+     * creates a scenario
+     *
+     * @param name the name used in the report and in the baseline
+     * @param operation the operation to call
+     * @param itemsPerDocument the payload size
+     * @param requestsPerSecond the arrival rate of requests
+     * @param clientThreads the number of threads sending requests. If all of
+     *                      them are busy requests queue up, the time spent
+     *                      waiting counts towards their latency.
+     */
+    public Scenario(String name, Operation operation, int itemsPerDocument, int requestsPerSecond, int clientThreads) {
+        this.name = name;
+        this.operation = operation;
+        this.itemsPerDocument = itemsPerDocument;
+        this.requestsPerSecond = requestsPerSecond;
+        this.clientThreads = clientThreads;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public int getItemsPerDocument() {
+        return itemsPerDocument;
+    }
+
+    public int getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public int getClientThreads() {
+        return clientThreads;
+    }
+
+    /**
+     * @param factor
+     * @return this scenario with its arrival rate multiplied by the given factor
+     */
+    public Scenario scaleRate(double factor) {
+        return new Scenario(name, operation, itemsPerDocument,
+                Math.max(1, (int) Math.round(requestsPerSecond * factor)), clientThreads);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + operation + ", " + itemsPerDocument + " items, "
+                + requestsPerSecond + " req/s, " + clientThreads + " threads)";
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws.loadtest;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of a scenario run
+ *
+ * @author Florian Frankenberger
+ */
+class ScenarioResult {
+
+    private static final double[] REPORTED_PERCENTILES = { 50, 75, 90, 99, 99.9, 99.99 };
+
+    private final Scenario scenario;
+    private final LatencyHistogram latencies;
+    private final long errors;
+    private final long durationNanos;
+    private final long allocatedBytes;
+
+    ScenarioResult(Scenario scenario, LatencyHistogram latencies, long errors, long durationNanos, long allocatedBytes) {
+        this.scenario = scenario;
+        this.latencies = latencies;
+        this.errors = errors;
+        this.durationNanos = durationNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public double getThroughput() {
+        return (latencies.getCount() + errors) * 1e9 / durationNanos;
+    }
+
+    public long getP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latencies.getValueAtPercentile(99));
+    }
+
+    /**
+     * @return the bytes allocated by all threads of the JVM (client and server)
+     *         per request or -1 if the JVM can't measure allocations
+     */
+    public long getAllocatedBytesPerRequest() {
+        final long requests = latencies.getCount() + errors;
+        return allocatedBytes < 0 || requests == 0 ? -1 : allocatedBytes / requests;
+    }
+
+    /**
+     * @return the bytes allocated per second or -1 if the JVM can't
+     *         measure allocations
+     */
+    public double getAllocationRate() {
+        return allocatedBytes < 0 ? -1 : allocatedBytes * 1e9 / durationNanos;
+    }
+
+    public String report() {
+        final StringBuilder report = new StringBuilder();
+        report.append(scenario).append('\n');
+        report.append(String.format(Locale.ROOT, "  throughput %.1f req/s, %d requests, %d errors%n",
+                getThroughput(), latencies.getCount(), errors));
+        report.append(String.format(Locale.ROOT, "  latency (us) mean %.1f", latencies.getMean() / 1000));
+        for (double percentile : REPORTED_PERCENTILES) {
+            report.append(String.format(Locale.ROOT, ", p%s %d", format(percentile),
+                    TimeUnit.NANOSECONDS.toMicros(latencies.getValueAtPercentile(percentile))));
+        }
+        report.append(String.format(Locale.ROOT, ", max %d%n", TimeUnit.NANOSECONDS.toMicros(latencies.getMax())));
+        report.append(String.format(Locale.ROOT, "  allocated %d bytes/request, %.1f MB/s",
+                getAllocatedBytesPerRequest(), getAllocationRate() / (1024 * 1024)));
+        return report.toString();
+    }
+
+    private static String format(double percentile) {
+        return percentile == Math.rint(percentile) ? String.valueOf((long) percentile) : String.valueOf(percentile);
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of concurrent calls to a remote service. Calls
+ * exceeding the limit are rejected right away instead of waiting for
+ * a free slot.
+ *
+ * @author Florian Frankenberger
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final int maxConcurrentCalls;
+
+    private final AtomicInteger concurrentCalls = new AtomicInteger();
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    final RemoteInvokationException rejectedException;
+
+    /**
+     * creates a bulkhead
+     *
+     * @param name the name used in exception messages and for metrics
+     * @param maxConcurrentCalls the maximum number of calls that may be
+     *                           executed at the same time
+     */
+    public Bulkhead(String name, int maxConcurrentCalls) {
+        if (maxConcurrentCalls < 1) {
+            throw new IllegalArgumentException("At least one concurrent call must be allowed");
+        }
+        this.name = name;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.rejectedException = new RemoteInvokationException("Bulkhead " + name + " is full", false);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * @return the number of calls currently executed
+     */
+    public int getConcurrentCalls() {
+        return concurrentCalls.get();
+    }
+
+    /**
+     * @return the number of calls that were rejected because the
+     *         bulkhead was full
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls.sum();
+    }
+
+    /**
+     * tries to acquire a slot for a call. Every acquired slot must be
+     * given back with {@link #release()}.
+     *
+     * @return true if the call may be executed, false otherwise
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = concurrentCalls.get();
+            if (current >= maxConcurrentCalls) {
+                rejectedCalls.increment();
+                return false;
+            }
+        } while (!concurrentCalls.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    public void release() {
+        concurrentCalls.decrementAndGet();
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.HttpOutput;
+
+/**
+ * An output stream that collects everything written into a chain of
+ * pooled direct byte buffers. Unlike a ByteArrayOutputStream the data
+ * is never copied when growing and can be handed to jetty's output
+ * without converting it to a byte array first.
+ * <p>
+ * The buffers must be given back to the pool with {@link #release()}
+ * once the data was written.
+ *
+ * @author Florian Frankenberger
+ */
+class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBufferPool pool;
+    private final int bufferSize;
+
+    private final List<ByteBuffer> buffers = new ArrayList<>(4);
+    private ByteBuffer current = null;
+    private int size = 0;
+
+    public ByteBufferOutputStream(ByteBufferPool pool, int bufferSize) {
+        this.pool = pool;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity().put((byte) b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            final ByteBuffer buffer = ensureCapacity();
+            final int chunk = Math.min(len, buffer.remaining());
+            buffer.put(b, off, chunk);
+            off += chunk;
+            len -= chunk;
+            size += chunk;
+        }
+    }
+
+    private ByteBuffer ensureCapacity() {
+        if (current == null || !current.hasRemaining()) {
+            current = pool.acquire(bufferSize, true);
+            current.clear();
+            buffers.add(current);
+        }
+        return current;
+    }
+
+    /**
+     * @return the number of bytes written to this stream
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * writes all collected bytes to the given output. The
+     * buffers are consumed by this call.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(HttpOutput out) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            buffer.flip();
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * gives all buffers back to the pool
+     */
+    public void release() {
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+        buffers.clear();
+        current = null;
+        size = 0;
+    }
+
+}
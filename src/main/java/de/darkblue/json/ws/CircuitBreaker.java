@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A circuit breaker that guards calls to a remote service. The outcome of
+ * the last calls is kept in a count based sliding window. As soon as either
+ * the failure rate or the rate of slow calls exceeds its threshold the
+ * breaker opens and all further calls fail fast. After a configurable wait
+ * time a limited number of trial calls is permitted (half open) to decide
+ * if the breaker can be closed again.
+ * <p>
+ * All bookkeeping is lock-free: the state is kept together with its
+ * sliding window, permits and opening time in one object that is replaced
+ * as a whole on every transition. All configuration should be done before
+ * the breaker is registered with a {@link WebServiceClient}.
+ *
+ * @author Florian Frankenberger
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    public static enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    public static interface StateListener {
+
+        void onStateTransition(CircuitBreaker circuitBreaker, State fromState, State toState);
+    }
+
+    /**
+     * the permission to execute a single call. It is bound to the state it was
+     * acquired in, so that outcomes of calls that were permitted before the last
+     * transition don't affect the current state.
+     */
+    public static final class Permission {
+
+        private final Phase phase;
+
+        private Permission(Phase phase) {
+            this.phase = phase;
+        }
+    }
+
+    private final String name;
+    private final int windowSize;
+
+    private float failureRateThreshold = 50f;
+    private float slowCallRateThreshold = 100f;
+    private long slowCallDurationNanos = TimeUnit.SECONDS.toNanos(5);
+    private int minimumNumberOfCalls = 10;
+    private long waitDurationInOpenStateNanos = TimeUnit.SECONDS.toNanos(30);
+    private int permittedCallsInHalfOpenState = 5;
+
+    private final AtomicReference<Phase> phase;
+
+    private final LongAdder notPermittedCalls = new LongAdder();
+    private final AtomicLongArray stateTransitions = new AtomicLongArray(State.values().length);
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+
+    final RemoteInvokationException notPermittedException;
+
+    /**
+     * creates a circuit breaker that evaluates the outcome of
+     * the last 100 calls
+     *
+     * @param name the name used in exception messages and for metrics
+     */
+    public CircuitBreaker(String name) {
+        this(name, 100);
+    }
+
+    /**
+     * creates a circuit breaker
+     *
+     * @param name the name used in exception messages and for metrics
+     * @param windowSize the number of most recent calls the failure and
+     *                   slow call rates are calculated from
+     */
+    public CircuitBreaker(String name, int windowSize) {
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1");
+        }
+        this.name = name;
+        this.windowSize = windowSize;
+        this.phase = new AtomicReference<>(new Phase(State.CLOSED, 0, new SlidingWindow(windowSize), 0));
+        this.notPermittedException = new RemoteInvokationException("Circuit breaker " + name + " is open", false);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * the failure rate in percent at which the breaker opens
+     *
+     * @param failureRateThreshold
+     */
+    public void setFailureRateThreshold(float failureRateThreshold) {
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * the rate of slow calls in percent at which the breaker opens
+     *
+     * @param slowCallRateThreshold
+     */
+    public void setSlowCallRateThreshold(float slowCallRateThreshold) {
+        this.slowCallRateThreshold = slowCallRateThreshold;
+    }
+
+    /**
+     * calls that take longer than the given duration are considered slow
+     *
+     * @param duration
+     * @param unit
+     */
+    public void setSlowCallDuration(long duration, TimeUnit unit) {
+        this.slowCallDurationNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * the number of calls that need to be recorded before the rates
+     * are evaluated at all
+     *
+     * @param minimumNumberOfCalls
+     */
+    public void setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+    }
+
+    /**
+     * the time the breaker stays open before trial calls are permitted
+     *
+     * @param duration
+     * @param unit
+     */
+    public void setWaitDurationInOpenState(long duration, TimeUnit unit) {
+        this.waitDurationInOpenStateNanos = unit.toNanos(duration);
+    }
+
+    /**
+     * the number of trial calls permitted while half open
+     *
+     * @param permittedCallsInHalfOpenState
+     */
+    public void setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+        if (permittedCallsInHalfOpenState < 1) {
+            throw new IllegalArgumentException("At least one call must be permitted in half open state");
+        }
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+    }
+
+    public void addStateListener(StateListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeStateListener(StateListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    public State getState() {
+        return phase.get().state;
+    }
+
+    /**
+     * @return the number of calls that were rejected because the breaker was open
+     */
+    public long getNotPermittedCalls() {
+        return notPermittedCalls.sum();
+    }
+
+    /**
+     * @param toState
+     * @return the number of transitions into the given state
+     */
+    public long getStateTransitions(State toState) {
+        return stateTransitions.get(toState.ordinal());
+    }
+
+    /**
+     * @return the failure rate in percent of the current window or -1 if
+     *         not enough calls were recorded yet
+     */
+    public float getFailureRate() {
+        final Phase current = phase.get();
+        return current.window.failureRate(requiredCalls(current.state));
+    }
+
+    /**
+     * @return the slow call rate in percent of the current window or -1 if
+     *         not enough calls were recorded yet
+     */
+    public float getSlowCallRate() {
+        final Phase current = phase.get();
+        return current.window.slowCallRate(requiredCalls(current.state));
+    }
+
+    /**
+     * acquires a permission to execute a call. Every call that acquired a
+     * permission must report its outcome with {@link #onSuccess(Permission, long)}
+     * or {@link #onError(Permission, long)}.
+     *
+     * @return the permission or null if the call should fail fast
+     */
+    public Permission tryAcquirePermission() {
+        while (true) {
+            final Phase current = phase.get();
+            switch (current.state) {
+                case CLOSED:
+                    return current.permission;
+                case OPEN:
+                    if (System.nanoTime() - current.openedAt < waitDurationInOpenStateNanos) {
+                        notPermittedCalls.increment();
+                        return null;
+                    }
+                    transition(current, new Phase(State.HALF_OPEN, 0,
+                            new SlidingWindow(permittedCallsInHalfOpenState), permittedCallsInHalfOpenState));
+                    break;
+                case HALF_OPEN:
+                    int permits;
+                    do {
+                        permits = current.halfOpenPermits.get();
+                        if (permits <= 0) {
+                            notPermittedCalls.increment();
+                            return null;
+                        }
+                    } while (!current.halfOpenPermits.compareAndSet(permits, permits - 1));
+                    return current.permission;
+            }
+        }
+    }
+
+    /**
+     * records a successful call
+     *
+     * @param permission the permission the call was executed with
+     * @param durationNanos the duration of the call in nanoseconds
+     */
+    public void onSuccess(Permission permission, long durationNanos) {
+        record(permission, durationNanos, false);
+    }
+
+    /**
+     * records a failed call
+     *
+     * @param permission the permission the call was executed with
+     * @param durationNanos the duration of the call in nanoseconds
+     */
+    public void onError(Permission permission, long durationNanos) {
+        record(permission, durationNanos, true);
+    }
+
+    private void record(Permission permission, long durationNanos, boolean failed) {
+        final Phase permitted = permission.phase;
+        if (phase.get() != permitted) {
+            //the call was permitted before the last transition
+            return;
+        }
+
+        permitted.window.record(failed, durationNanos >= slowCallDurationNanos);
+
+        final int required = requiredCalls(permitted.state);
+        final float failureRate = permitted.window.failureRate(required);
+        final float slowCallRate = permitted.window.slowCallRate(required);
+        if (failureRate >= 0 && (failureRate >= failureRateThreshold || slowCallRate >= slowCallRateThreshold)) {
+            //the open state keeps the window that caused it for the metrics
+            transition(permitted, new Phase(State.OPEN, System.nanoTime(), permitted.window, 0));
+        } else
+            if (failureRate >= 0 && permitted.state == State.HALF_OPEN) {
+                transition(permitted, new Phase(State.CLOSED, 0, new SlidingWindow(windowSize), 0));
+            }
+    }
+
+    private int requiredCalls(State state) {
+        return state == State.HALF_OPEN
+                ? permittedCallsInHalfOpenState
+                : Math.max(1, Math.min(minimumNumberOfCalls, windowSize));
+    }
+
+    private void transition(Phase fromPhase, Phase toPhase) {
+        if (!phase.compareAndSet(fromPhase, toPhase)) {
+            return;
+        }
+        stateTransitions.incrementAndGet(toPhase.state.ordinal());
+
+        LOGGER.log(Level.INFO, "Circuit breaker {0} changed from {1} to {2}", new Object[]{ name, fromPhase.state, toPhase.state });
+        for (StateListener listener : listeners) {
+            listener.onStateTransition(this, fromPhase.state, toPhase.state);
+        }
+    }
+
+    /**
+     * a state together with all data that belongs to it. Phases are only
+     * published completely initialized, so a thread that sees a state always
+     * sees its window, permits and opening time as well.
+     */
+    private static final class Phase {
+
+        final State state;
+        final long openedAt;
+        final SlidingWindow window;
+        final AtomicInteger halfOpenPermits;
+        final Permission permission = new Permission(this);
+
+        Phase(State state, long openedAt, SlidingWindow window, int halfOpenPermits) {
+            this.state = state;
+            this.openedAt = openedAt;
+            this.window = window;
+            this.halfOpenPermits = new AtomicInteger(halfOpenPermits);
+        }
+    }
+
+    /**
+     * a lock-free ring buffer of call outcomes. The aggregated counters are
+     * maintained incrementally, so under concurrent updates they can be
+     * off by the calls currently being recorded.
+     */
+    private static final class SlidingWindow {
+
+        private static final int RECORDED = 1;
+        private static final int FAILED = 2;
+        private static final int SLOW = 4;
+
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong cursor = new AtomicLong();
+
+        private final AtomicInteger totalCalls = new AtomicInteger();
+        private final AtomicInteger failedCalls = new AtomicInteger();
+        private final AtomicInteger slowCalls = new AtomicInteger();
+
+        SlidingWindow(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        void record(boolean failed, boolean slow) {
+            final int outcome = RECORDED | (failed ? FAILED : 0) | (slow ? SLOW : 0);
+            final int slot = (int) (cursor.getAndIncrement() % outcomes.length());
+            final int previous = outcomes.getAndSet(slot, outcome);
+
+            if ((previous & RECORDED) == 0) {
+                totalCalls.incrementAndGet();
+            }
+            adjust(failedCalls, previous, outcome, FAILED);
+            adjust(slowCalls, previous, outcome, SLOW);
+        }
+
+        private static void adjust(AtomicInteger counter, int previous, int outcome, int flag) {
+            final int delta = (outcome & flag) - (previous & flag);
+            if (delta != 0) {
+                counter.addAndGet(delta / flag);
+            }
+        }
+
+        float failureRate(int requiredCalls) {
+            return rate(failedCalls.get(), requiredCalls);
+        }
+
+        float slowCallRate(int requiredCalls) {
+            return rate(slowCalls.get(), requiredCalls);
+        }
+
+        private float rate(int calls, int requiredCalls) {
+            final int total = totalCalls.get();
+            if (total < requiredCalls) {
+                return -1f;
+            }
+            return Math.max(0, calls) * 100f / total;
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jetty.server.ConnectionFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+
+/**
+ * A server connector that can stop accepting new connections while the
+ * server keeps serving the connections it already has.
+ *
+ * @author Florian Frankenberger
+ */
+class DrainableServerConnector extends ServerConnector {
+
+    private static final long ACCEPTOR_EXIT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private volatile boolean accepting = true;
+    private final AtomicInteger threadsInAccept = new AtomicInteger();
+
+    public DrainableServerConnector(Server server, ConnectionFactory... factories) {
+        super(server, factories);
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        accepting = true;
+        super.doStart();
+    }
+
+    /**
+     * closes the listening socket. The acceptor threads end instead of
+     * polling the closed socket until the connector is stopped.
+     * <p>
+     * The socket is only really closed once the acceptor threads left
+     * their blocking accept, so this waits for them to do so.
+     */
+    public void stopAccepting() throws InterruptedException {
+        accepting = false;
+        close();
+        final long start = System.nanoTime();
+        while (threadsInAccept.get() > 0 && System.nanoTime() - start < ACCEPTOR_EXIT_TIMEOUT_NANOS) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Override
+    public void accept(int acceptorID) throws IOException {
+        threadsInAccept.incrementAndGet();
+        try {
+            super.accept(acceptorID);
+        } finally {
+            threadsInAccept.decrementAndGet();
+        }
+    }
+
+    @Override
+    protected boolean isAccepting() {
+        return accepting && super.isAccepting();
+    }
+
+}
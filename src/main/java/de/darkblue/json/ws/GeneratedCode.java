@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Naming and lookup of the classes generated by the {@link WebServiceProcessor}.
+ * A generated class lives in the package of the annotated type and is named
+ * after its binary name with '$' replaced by '_', e.g. the routes of
+ * <code>a.b.Outer$Service</code> are <code>a.b.Outer_Service_WebServiceRoutes</code>.
+ *
+ * @author Florian Frankenberger
+ */
+final class GeneratedCode {
+
+    static final String ROUTES_SUFFIX = "_WebServiceRoutes";
+    static final String STUB_SUFFIX = "_RemoteServiceStub";
+
+    private static final Constructor<?> NO_STUB;
+
+    /**
+     * the stub constructors are stored with the interfaces, so that they don't
+     * keep the class loaders of applications alive
+     */
+    private static final ClassValue<Constructor<?>> STUB_CONSTRUCTORS = new ClassValue<Constructor<?>>() {
+        @Override
+        protected Constructor<?> computeValue(Class<?> iface) {
+            final Class<?> stubClass = load(iface, STUB_SUFFIX);
+            if (stubClass == null || !iface.isAssignableFrom(stubClass)) {
+                return NO_STUB;
+            }
+            try {
+                return stubClass.getConstructor(WebServiceClient.class, String.class);
+            } catch (NoSuchMethodException ex) {
+                throw new IllegalStateException("Generated stub " + stubClass.getName() + " has no proper constructor", ex);
+            }
+        }
+    };
+
+    static {
+        try {
+            NO_STUB = Object.class.getConstructor();
+        } catch (NoSuchMethodException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private GeneratedCode() {
+    }
+
+    static String generatedName(String binaryName, String suffix) {
+        final int lastDot = binaryName.lastIndexOf('.');
+        return binaryName.substring(0, lastDot + 1) + binaryName.substring(lastDot + 1).replace('$', '_') + suffix;
+    }
+
+    /**
+     * @param clazz the class of the service implementation
+     * @return the generated routes or null if none were generated
+     */
+    static <T> ServiceRoutes<T> loadRoutes(Class<T> clazz) {
+        final Class<?> routesClass = load(clazz, ROUTES_SUFFIX);
+        if (routesClass == null) {
+            return null;
+        }
+        try {
+            return (ServiceRoutes<T>) routesClass.getConstructor().newInstance();
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+            throw new IllegalStateException("Could not instantiate generated routes " + routesClass.getName(), ex);
+        }
+    }
+
+    /**
+     * @param iface the interface of the remote service
+     * @return the constructor (WebServiceClient, String) of the generated
+     *         stub or null if none was generated
+     */
+    static <T> Constructor<? extends T> stubConstructor(Class<T> iface) {
+        final Constructor<?> constructor = STUB_CONSTRUCTORS.get(iface);
+        return constructor == NO_STUB ? null : (Constructor<? extends T>) constructor;
+    }
+
+    private static Class<?> load(Class<?> clazz, String suffix) {
+        final ClassLoader classLoader = clazz.getClassLoader();
+        if (classLoader == null) {
+            return null;
+        }
+        try {
+            return Class.forName(generatedName(clazz.getName(), suffix), true, classLoader);
+        } catch (ClassNotFoundException ex) {
+            return null;
+        }
+    }
+
+}
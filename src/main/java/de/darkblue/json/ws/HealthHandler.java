@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+/**
+ * Answers requests to the health path with 200 when the server is ready
+ * to serve requests and with 503 otherwise, so that load balancers only
+ * route traffic to nodes that finished starting.
+ *
+ * @author Florian Frankenberger
+ */
+class HealthHandler extends AbstractHandler {
+
+    private static final byte[] READY = "ready".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NOT_READY = "not ready".getBytes(StandardCharsets.UTF_8);
+
+    private final String path;
+    private final BooleanSupplier ready;
+
+    public HealthHandler(String path, BooleanSupplier ready) {
+        this.path = path;
+        this.ready = ready;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        if (!path.equals(target)) {
+            return;
+        }
+        baseRequest.setHandled(true);
+
+        final boolean isReady = ready.getAsBoolean();
+        final byte[] payload = isReady ? READY : NOT_READY;
+        response.setStatus(isReady ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Cache-Control", "no-cache");
+        response.setContentType("text/plain;charset=utf-8");
+        response.setContentLength(payload.length);
+        response.getOutputStream().write(payload);
+    }
+
+}
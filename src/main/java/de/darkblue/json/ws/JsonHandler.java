@@ -18,14 +18,19 @@
  */
 package de.darkblue.json.ws;
 
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -34,12 +39,15 @@ import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
 /**
  * A simple handler that handles HTTP post requests that contain
- * JSON and returns a JSON as response.
+ * JSON and returns a JSON as response. Requests that can't be
+ * processed are answered with a proper status code and a
+ * {@link JsonError} body.
  *
  * @author Florian Frankenberger
  */
@@ -47,8 +55,29 @@ class JsonHandler extends AbstractHandler {
 
     private static final Logger LOGGER = Logger.getLogger(JsonHandler.class.getCanonicalName());
 
+    private static final int GZIP_BUFFER_SIZE = 8192;
+    private static final int OUTPUT_BUFFER_SIZE = 16384;
+    private static final String STREAM_CONSTRAINTS_EXCEPTION = "com.fasterxml.jackson.core.exc.StreamConstraintsException";
+
+    private static final WebServiceException METHOD_NOT_ALLOWED = new WebServiceException(
+            HttpServletResponse.SC_METHOD_NOT_ALLOWED, "method_not_allowed", "Only POST is supported");
+    private static final WebServiceException UNSUPPORTED_MEDIA_TYPE = new WebServiceException(
+            HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE, "unsupported_media_type", "Content type must be application/json");
+    private static final WebServiceException MALFORMED_BODY = new WebServiceException(
+            HttpServletResponse.SC_BAD_REQUEST, "bad_request", "Body is not gzip compressed or truncated");
+
+    private final RateLimitedLogger errorLogger = new RateLimitedLogger(LOGGER, 10, 10, TimeUnit.SECONDS);
+
     private final Map<String, PathInfo<?>> pathMapping = new HashMap<>();
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, RequestLimits> pathLimits = new HashMap<>();
+    private final ServerMetrics metrics;
+
+    private SerializationContext serializationContext = SerializationContext.getDefault();
+    private volatile Map<WebServiceException, byte[]> encodedErrors = new HashMap<>();
+
+    private RequestLimits defaultLimits = new RequestLimits();
+    private volatile Tracer tracer = null;
+    private boolean serverTimingEnabled = false;
 
     public static interface JsonRequestHandler<T> {
 
@@ -66,43 +95,317 @@ class JsonHandler extends AbstractHandler {
         }
     }
 
-    public JsonHandler() {
-        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+    public JsonHandler(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * encodes the bodies of the preallocated errors once. This is not done in the
+     * constructor so that the serialization context can still be configured until
+     * the server is started.
+     */
+    @Override
+    protected void doStart() throws Exception {
+        final Map<WebServiceException, byte[]> errors = new HashMap<>();
+        for (WebServiceException e : new WebServiceException[]{ METHOD_NOT_ALLOWED, UNSUPPORTED_MEDIA_TYPE, MALFORMED_BODY,
+            RequestLimitExceededException.COMPRESSED_SIZE, RequestLimitExceededException.DECOMPRESSED_SIZE,
+            RequestLimitExceededException.NESTING_DEPTH, RequestLimitExceededException.STRING_LENGTH,
+            RequestLimitExceededException.PARSER_CONSTRAINT }) {
+            errors.put(e, encodeError(e));
+        }
+        this.encodedErrors = errors;
+        super.doStart();
+    }
+
+    public void setSerializationContext(SerializationContext serializationContext) {
+        this.serializationContext = serializationContext;
     }
 
     public <T> void putMapping(String path, Class<T> requestClass, Function<T, Object> requestHandler) {
         this.pathMapping.put(path, new PathInfo<>(requestClass, requestHandler));
     }
 
+    public void setDefaultLimits(RequestLimits limits) {
+        this.defaultLimits = limits;
+    }
+
+    public void putLimits(String path, RequestLimits limits) {
+        this.pathLimits.put(path, limits);
+    }
+
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    public void setServerTimingEnabled(boolean serverTimingEnabled) {
+        this.serverTimingEnabled = serverTimingEnabled;
+    }
+
+    /**
+     * runs synthetic requests through {@link #handle} for every mapping to load
+     * classes and to fill jackson's caches before real requests arrive. The requests
+     * are sent through the given in-memory connector, so that routing, the checks
+     * of the headers, writing the response and tracing are warmed up as well. The
+     * request objects are default instances of the request classes, serialized and
+     * compressed like a client would do. Mappings whose request class has no default
+     * instance (e.g. strings, lists or classes without a default constructor) are
+     * skipped instead of being called with null.
+     *
+     * @param connector a connector of a started server that uses this handler
+     * @param iterations the number of requests per mapping
+     */
+    public void warmUp(LocalConnector connector, int iterations) {
+        final long start = System.nanoTime();
+        int failed = 0;
+        int skipped = 0;
+        for (Map.Entry<String, PathInfo<?>> entry : pathMapping.entrySet()) {
+            final byte[] request = sampleRequest(entry.getKey(), entry.getValue().requestClass);
+            if (request == null) {
+                skipped++;
+                LOGGER.log(Level.FINE, "Skipping warm up of {0}, {1} can''t be read from an empty JSON object",
+                        new Object[]{ entry.getKey(), entry.getValue().requestClass.getName() });
+                continue;
+            }
+            for (int i = 0; i < iterations; i++) {
+                try {
+                    final ByteBuffer response = connector.getResponses(ByteBuffer.wrap(request), 5, TimeUnit.SECONDS);
+                    if (!StandardCharsets.ISO_8859_1.decode(response).toString().startsWith("HTTP/1.1 200 ")) {
+                        failed++;
+                    }
+                } catch (Exception e) {
+                    failed++;
+                    LOGGER.log(Level.FINE, "Warm up request to " + entry.getKey() + " failed", e);
+                }
+            }
+        }
+        LOGGER.log(Level.INFO, "Warm up of {0} mappings with {1} iterations took {2} ms ({3} requests failed, {4} mappings skipped)",
+                new Object[]{ pathMapping.size() - skipped, iterations, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    failed, skipped });
+    }
+
+    /**
+     * @return a complete http request with a compressed default instance of the
+     *         request class or null if there is no such instance. Its trace context
+     *         is new and not sampled, so the warm up doesn't export any spans.
+     */
+    private byte[] sampleRequest(String path, Class<?> requestClass) {
+        final byte[] body = sampleBody(requestClass);
+        if (body == null) {
+            return null;
+        }
+        final byte[] header = ("POST " + path + " HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Content-Type: application/json;charset=utf-8\r\n"
+                + "Content-Length: " + body.length + "\r\n"
+                + Tracer.TRACEPARENT_HEADER + ": " + TraceContext.newRoot(false).toTraceparent() + "\r\n"
+                + "Connection: close\r\n"
+                + "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        final byte[] request = Arrays.copyOf(header, header.length + body.length);
+        System.arraycopy(body, 0, request, header.length, body.length);
+        return request;
+    }
+
+    private byte[] sampleBody(Class<?> requestClass) {
+        final Object sample;
+        try {
+            sample = serializationContext.readerFor(requestClass).readValue("{}");
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        return sample == null ? null : encode(sample);
+    }
+
     @Override
     public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
-        if (pathMapping.containsKey(target) && baseRequest.getMethod().equalsIgnoreCase("POST")
-                && (request.getContentType().startsWith("application/json")
-                    || request.getContentType().startsWith("application/javascript"))) {
-            final PathInfo<Object> pathInfo = (PathInfo<Object>) pathMapping.get(target);
-
-            try {
-                GZIPInputStream gzIn = new GZIPInputStream(request.getInputStream());
-                Object value = mapper.readValue(gzIn, pathInfo.requestClass);
-                Object result = pathInfo.requestHandler.apply(value);
-
-                ByteArrayOutputStream bOut = new ByteArrayOutputStream();
-                GZIPOutputStream gzOut = new GZIPOutputStream(bOut);
-                mapper.writeValue(gzOut, result);
-                gzOut.flush();
-                byte[] payload = bOut.toByteArray();
-
-                response.setContentType("application/json;charset=utf-8");
-                response.setContentLength(payload.length);
-                response.getOutputStream().write(payload);
-
-                response.setStatus(HttpServletResponse.SC_OK);
-                baseRequest.setHandled(true);
-            } catch (JsonParseException e) {
-                LOGGER.log(Level.WARNING, "Could not parse incoming JSON as type " + pathInfo.requestClass.getCanonicalName(), e);
-            } catch (JsonMappingException e) {
-                LOGGER.log(Level.WARNING, "Could not map type to JSON", e);
+        final PathInfo<Object> pathInfo = (PathInfo<Object>) pathMapping.get(target);
+        if (pathInfo == null) {
+            return;
+        }
+        baseRequest.setHandled(true);
+
+        final Tracer currentTracer = this.tracer;
+        final Span span = currentTracer == null ? null
+                : currentTracer.startServerSpan(target, request.getHeader(Tracer.TRACEPARENT_HEADER));
+        final TraceContext previousContext = span == null ? null : TraceContext.bind(span.getContext());
+        final RequestTimings timings = serverTimingEnabled ? new RequestTimings() : null;
+        int status = HttpServletResponse.SC_OK;
+
+        metrics.requestStarted();
+        try {
+            if (metrics.isDraining()) {
+                //the server is shutting down, keep-alive clients should reconnect elsewhere
+                response.setHeader("Connection", "close");
+            }
+            if (!baseRequest.getMethod().equalsIgnoreCase("POST")) {
+                response.setHeader("Allow", "POST");
+                throw METHOD_NOT_ALLOWED;
+            }
+            final String contentType = request.getContentType();
+            if (contentType == null
+                    || !(contentType.startsWith("application/json")
+                    || contentType.startsWith("application/javascript"))) {
+                throw UNSUPPORTED_MEDIA_TYPE;
+            }
+
+            final RequestLimits limits = pathLimits.getOrDefault(target, defaultLimits);
+            final long contentLength = request.getContentLengthLong();
+            if (limits.getMaxCompressedSize() >= 0 && contentLength > limits.getMaxCompressedSize()) {
+                metrics.requestRejected(contentLength);
+                throw RequestLimitExceededException.COMPRESSED_SIZE;
+            }
+
+            final Object value = readRequest(request.getInputStream(), pathInfo, limits, timings);
+            final long invokeStart = timings == null ? 0 : System.nanoTime();
+            final Object result = invoke(pathInfo, value);
+            if (timings != null) {
+                timings.invokeNanos = System.nanoTime() - invokeStart;
+            }
+            writeResponse(baseRequest, response, result, timings);
+        } catch (WebServiceException e) {
+            status = e.getStatus();
+            writeError(target, response, e);
+        } finally {
+            metrics.requestFinished();
+            if (span != null) {
+                TraceContext.bind(previousContext);
+                currentTracer.finish(span, status);
+            }
+        }
+    }
+
+    /**
+     * inflates and parses the body while enforcing the given limits, so that
+     * oversized bodies are rejected before they are completely read
+     */
+    private Object readRequest(InputStream in, PathInfo<Object> pathInfo, RequestLimits limits,
+            RequestTimings timings) throws WebServiceException {
+        final long start = timings == null ? 0 : System.nanoTime();
+        final LimitedInputStream compressedIn = new LimitedInputStream(in,
+                limits.getMaxCompressedSize(), RequestLimitExceededException.COMPRESSED_SIZE);
+        final ObjectReader reader = serializationContext.readerFor(pathInfo.requestClass);
+        try (JsonParser parser = new LimitingJsonParser(reader.getFactory().createParser(
+                new LimitedInputStream(inflate(compressedIn, timings),
+                        limits.getMaxDecompressedSize(), RequestLimitExceededException.DECOMPRESSED_SIZE)), limits)) {
+            final Object value = reader.readValue(parser);
+            if (timings != null) {
+                timings.parseNanos = System.nanoTime() - start - timings.decompressNanos;
+            }
+            return value;
+        } catch (RequestLimitExceededException e) {
+            metrics.requestRejected(compressedIn.getCount());
+            throw e.getError();
+        } catch (JsonProcessingException e) {
+            if (e.getCause() instanceof RequestLimitExceededException) {
+                metrics.requestRejected(compressedIn.getCount());
+                throw ((RequestLimitExceededException) e.getCause()).getError();
+            }
+            if (isStreamConstraintViolation(e) || isStreamConstraintViolation(e.getCause())) {
+                metrics.requestRejected(compressedIn.getCount());
+                throw RequestLimitExceededException.PARSER_CONSTRAINT;
+            }
+            throw new WebServiceException(HttpServletResponse.SC_BAD_REQUEST, "bad_request", e.getOriginalMessage(), e);
+        } catch (IOException e) {
+            throw MALFORMED_BODY;
+        }
+    }
+
+    /**
+     * jackson 2.15 and later enforce constraints of their own (e.g. on the length of
+     * strings). The exception is matched by name as it doesn't exist in older versions.
+     */
+    private static boolean isStreamConstraintViolation(Throwable e) {
+        return e != null && e.getClass().getName().equals(STREAM_CONSTRAINTS_EXCEPTION);
+    }
+
+    private static InputStream inflate(InputStream in, RequestTimings timings) throws IOException {
+        final InputStream inflated = new GZIPInputStream(in, GZIP_BUFFER_SIZE);
+        return timings == null ? inflated : new RequestTimings.TimedInputStream(inflated, timings);
+    }
+
+    private Object invoke(PathInfo<Object> pathInfo, Object value) throws WebServiceException {
+        try {
+            return pathInfo.requestHandler.apply(value);
+        } catch (WebServiceException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            //the cause is only logged, its class would tell clients about the implementation
+            throw new WebServiceException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "internal_error", "Internal server error", e);
+        }
+    }
+
+    /**
+     * serializes and compresses the result directly into pooled direct buffers
+     * and hands them to jetty's output without copying them into a byte array.
+     */
+    private void writeResponse(Request baseRequest, HttpServletResponse response, Object result,
+            RequestTimings timings) throws IOException, WebServiceException {
+        final ByteBufferOutputStream bOut = new ByteBufferOutputStream(
+                baseRequest.getHttpChannel().getByteBufferPool(), OUTPUT_BUFFER_SIZE);
+        try {
+            final long serializeStart = timings == null ? 0 : System.nanoTime();
+            serialize(result, bOut);
+            if (timings != null) {
+                timings.serializeNanos = System.nanoTime() - serializeStart;
+                response.setHeader("Server-Timing", timings.toServerTiming());
+            }
+
+            response.setContentType("application/json;charset=utf-8");
+            response.setContentLength(bOut.size());
+            response.setStatus(HttpServletResponse.SC_OK);
+            bOut.writeTo(baseRequest.getResponse().getHttpOutput());
+        } finally {
+            bOut.release();
+        }
+    }
+
+    private void serialize(Object result, ByteBufferOutputStream bOut) throws IOException, WebServiceException {
+        try (GZIPOutputStream gzOut = new GZIPOutputStream(bOut, GZIP_BUFFER_SIZE)) {
+            serializationContext.writer().writeValue(gzOut, result);
+        } catch (JsonProcessingException e) {
+            throw new WebServiceException(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "internal_error", "Could not map result to JSON", e);
+        }
+    }
+
+    /**
+     * answers with the status of the given exception and a compressed {@link JsonError} body.
+     * The bodies of the preallocated exceptions are only encoded once.
+     */
+    private void writeError(String target, HttpServletResponse response, WebServiceException e) {
+        final boolean serverError = e.getStatus() >= 500;
+        errorLogger.log(serverError ? Level.WARNING : Level.FINE, serverError ? e.getCause() : null,
+                () -> "Request to " + target + " failed with " + e.getStatus() + ": " + e.getMessage());
+
+        byte[] payload = encodedErrors.get(e);
+        if (payload == null) {
+            payload = encodeError(e);
+        }
+        try {
+            if (e.getStatus() == HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE) {
+                //don't let jetty read the rest of an oversized body
+                response.setHeader("Connection", "close");
+            }
+            response.setContentType("application/json;charset=utf-8");
+            response.setContentLength(payload.length);
+            response.setStatus(e.getStatus());
+            response.getOutputStream().write(payload);
+        } catch (IOException ex) {
+            //client is gone, nothing left to tell
+        }
+    }
+
+    private byte[] encodeError(WebServiceException e) {
+        return encode(new JsonError(e.getStatus(), e.getError(), e.getMessage()));
+    }
+
+    private byte[] encode(Object value) {
+        try {
+            ByteArrayOutputStream bOut = new ByteArrayOutputStream(128);
+            try (GZIPOutputStream gzOut = new GZIPOutputStream(bOut)) {
+                serializationContext.writer().writeValue(gzOut, value);
             }
+            return bOut.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
         }
     }
 
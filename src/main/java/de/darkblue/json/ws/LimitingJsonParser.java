@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.util.JsonParserDelegate;
+import java.io.IOException;
+
+/**
+ * A parser that checks the nesting depth and the length of strings
+ * and field names token by token while the body is parsed.
+ * <p>
+ * The length of a string can only be checked once jackson has read the
+ * complete token, so a single string is held in memory up to the
+ * decompressed size limit (or jackson's own string length constraint,
+ * whichever is hit first) before it is rejected.
+ *
+ * @author Florian Frankenberger
+ */
+class LimitingJsonParser extends JsonParserDelegate {
+
+    private final int maxNestingDepth;
+    private final int maxStringLength;
+    private int depth = 0;
+
+    public LimitingJsonParser(JsonParser parser, RequestLimits limits) {
+        super(parser);
+        this.maxNestingDepth = limits.getMaxNestingDepth();
+        this.maxStringLength = limits.getMaxStringLength();
+    }
+
+    @Override
+    public JsonToken nextToken() throws IOException {
+        final JsonToken token = delegate.nextToken();
+        if (token != null) {
+            switch (token) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    if (++depth > maxNestingDepth && maxNestingDepth >= 0) {
+                        throw new RequestLimitExceededException(RequestLimitExceededException.NESTING_DEPTH);
+                    }
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    break;
+                case FIELD_NAME:
+                case VALUE_STRING:
+                    if (maxStringLength >= 0 && delegate.getTextLength() > maxStringLength) {
+                        throw new RequestLimitExceededException(RequestLimitExceededException.STRING_LENGTH);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return token;
+    }
+
+    @Override
+    public JsonToken nextValue() throws IOException {
+        JsonToken token = nextToken();
+        if (token == JsonToken.FIELD_NAME) {
+            token = nextToken();
+        }
+        return token;
+    }
+
+    /**
+     * skips through this parser so that ignored content is checked as well
+     */
+    @Override
+    public JsonParser skipChildren() throws IOException {
+        final JsonToken current = currentToken();
+        if (current != JsonToken.START_OBJECT && current != JsonToken.START_ARRAY) {
+            return this;
+        }
+        int open = 1;
+        while (open > 0) {
+            final JsonToken token = nextToken();
+            if (token == null) {
+                return this;
+            }
+            if (token.isStructStart()) {
+                open++;
+            } else
+                if (token.isStructEnd()) {
+                    open--;
+                }
+        }
+        return this;
+    }
+
+}
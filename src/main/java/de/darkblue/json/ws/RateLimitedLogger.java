@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Wraps a logger and lets only a limited number of records per interval
+ * pass. Further records are only counted and the count is appended to the
+ * next record that passes. This way bad traffic can't turn logging into
+ * a bottleneck.
+ *
+ * @author Florian Frankenberger
+ */
+class RateLimitedLogger {
+
+    private final Logger logger;
+    private final int maxRecordsPerInterval;
+    private final long intervalNanos;
+
+    private final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+    private final AtomicInteger records = new AtomicInteger();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    public RateLimitedLogger(Logger logger, int maxRecordsPerInterval, long interval, TimeUnit unit) {
+        this.logger = logger;
+        this.maxRecordsPerInterval = maxRecordsPerInterval;
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    public void log(Level level, Throwable thrown, Supplier<String> message) {
+        if (!logger.isLoggable(level)) {
+            return;
+        }
+        if (!tryAcquire()) {
+            suppressed.incrementAndGet();
+            return;
+        }
+
+        final long suppressedRecords = suppressed.getAndSet(0);
+        if (suppressedRecords == 0) {
+            logger.log(level, message.get(), thrown);
+        } else {
+            logger.log(level, message.get() + " (" + suppressedRecords + " similar records suppressed)", thrown);
+        }
+    }
+
+    /**
+     * @return the number of records suppressed since the last record passed
+     */
+    public long getSuppressed() {
+        return suppressed.get();
+    }
+
+    private boolean tryAcquire() {
+        final long now = System.nanoTime();
+        final long start = intervalStart.get();
+        if (now - start >= intervalNanos && intervalStart.compareAndSet(start, now)) {
+            records.set(0);
+        }
+        return records.incrementAndGet() <= maxRecordsPerInterval;
+    }
+
+}
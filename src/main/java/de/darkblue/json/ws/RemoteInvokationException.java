@@ -35,4 +35,15 @@ public class RemoteInvokationException extends Exception {
         super(message, cause);
     }
 
+    /**
+     * creates an exception without stack trace that can be
+     * preallocated and thrown repeatedly on the hot path
+     *
+     * @param message
+     * @param writableStackTrace
+     */
+    protected RemoteInvokationException(String message, boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
+
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+/**
+ * Thrown by the client when the remote service answered with
+ * a status code other than 2xx.
+ *
+ * @author Florian Frankenberger
+ */
+public class RemoteServiceException extends RemoteInvokationException {
+
+    private final int status;
+    private final String error;
+
+    public RemoteServiceException(int status, String error, String message) {
+        super(message);
+        this.status = status;
+        this.error = error;
+    }
+
+    /**
+     * @return the HTTP status code of the response
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return the error code sent by the remote service or null if
+     *         the response did not contain a {@link JsonError}
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return true if the remote service rejected the request (4xx), false
+     *         if the remote service failed to process it (5xx)
+     */
+    public boolean isClientError() {
+        return status / 100 == 4;
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.io.IOException;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Thrown while inflating or parsing a request body that exceeds one of
+ * its {@link RequestLimits}. This is an IOException so that jackson passes
+ * it through unwrapped. No stack trace is recorded.
+ *
+ * @author Florian Frankenberger
+ */
+class RequestLimitExceededException extends IOException {
+
+    static final WebServiceException COMPRESSED_SIZE = payloadTooLarge("Body exceeds the compressed size limit");
+    static final WebServiceException DECOMPRESSED_SIZE = payloadTooLarge("Body exceeds the decompressed size limit");
+    static final WebServiceException NESTING_DEPTH = payloadTooLarge("JSON exceeds the nesting depth limit");
+    static final WebServiceException STRING_LENGTH = payloadTooLarge("JSON exceeds the string length limit");
+    static final WebServiceException PARSER_CONSTRAINT = payloadTooLarge("JSON exceeds a constraint of the parser");
+
+    private final WebServiceException error;
+
+    public RequestLimitExceededException(WebServiceException error) {
+        super(error.getMessage());
+        this.error = error;
+    }
+
+    /**
+     * @return the preallocated error the request is answered with
+     */
+    public WebServiceException getError() {
+        return error;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    private static WebServiceException payloadTooLarge(String message) {
+        return new WebServiceException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "payload_too_large", message);
+    }
+
+}
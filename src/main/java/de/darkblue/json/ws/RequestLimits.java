@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+/**
+ * Limits for incoming requests. Requests exceeding one of them are
+ * rejected with 413 (payload too large) as soon as the limit is hit
+ * while inflating or parsing the body. A limit of -1 disables the
+ * corresponding check.
+ *
+ * @author Florian Frankenberger
+ */
+public class RequestLimits {
+
+    private long maxCompressedSize = 16L * 1024 * 1024;
+    private long maxDecompressedSize = 64L * 1024 * 1024;
+    private int maxNestingDepth = 500;
+    private int maxStringLength = 4 * 1024 * 1024;
+
+    /**
+     * creates limits with defaults of 16MB compressed size, 64MB decompressed
+     * size, a nesting depth of 500 and 4M characters per string. The string
+     * length stays below the constraint newer jackson versions enforce on
+     * their own (5M characters in 2.15.0, 20M later), so that the limit
+     * configured here is the one that applies.
+     */
+    public RequestLimits() {
+    }
+
+    public long getMaxCompressedSize() {
+        return maxCompressedSize;
+    }
+
+    /**
+     * @param maxCompressedSize the maximum size of the body as sent over the wire in bytes
+     */
+    public void setMaxCompressedSize(long maxCompressedSize) {
+        this.maxCompressedSize = maxCompressedSize;
+    }
+
+    public long getMaxDecompressedSize() {
+        return maxDecompressedSize;
+    }
+
+    /**
+     * @param maxDecompressedSize the maximum size of the inflated JSON in bytes
+     */
+    public void setMaxDecompressedSize(long maxDecompressedSize) {
+        this.maxDecompressedSize = maxDecompressedSize;
+    }
+
+    public int getMaxNestingDepth() {
+        return maxNestingDepth;
+    }
+
+    /**
+     * @param maxNestingDepth the maximum depth of nested JSON objects and arrays
+     */
+    public void setMaxNestingDepth(int maxNestingDepth) {
+        this.maxNestingDepth = maxNestingDepth;
+    }
+
+    public int getMaxStringLength() {
+        return maxStringLength;
+    }
+
+    /**
+     * the maximum length of JSON strings and field names in characters. A string
+     * is checked after it was read completely, so strings are only bounded in memory
+     * by the decompressed size while they are parsed. Jackson versions that enforce
+     * a string length constraint of their own reject longer strings regardless of
+     * this limit, such requests are rejected with 413 as well.
+     *
+     * @param maxStringLength
+     */
+    public void setMaxStringLength(int maxStringLength) {
+        this.maxStringLength = maxStringLength;
+    }
+
+}
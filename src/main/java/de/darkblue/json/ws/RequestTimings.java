@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The time spent in each phase of a request, reported to the
+ * client in a Server-Timing header.
+ *
+ * @author Florian Frankenberger
+ */
+final class RequestTimings {
+
+    long decompressNanos;
+    long parseNanos;
+    long invokeNanos;
+    long serializeNanos;
+
+    /**
+     * @return the value of the Server-Timing header in milliseconds
+     */
+    String toServerTiming() {
+        final StringBuilder value = new StringBuilder(96);
+        append(value, "decompress", decompressNanos).append(", ");
+        append(value, "parse", parseNanos).append(", ");
+        append(value, "invoke", invokeNanos).append(", ");
+        append(value, "serialize", serializeNanos);
+        return value.toString();
+    }
+
+    private static StringBuilder append(StringBuilder value, String name, long nanos) {
+        final long micros = Math.max(0, nanos) / 1000;
+        final long fraction = micros % 1000;
+        value.append(name).append(";dur=").append(micros / 1000).append('.');
+        if (fraction < 100) {
+            value.append('0');
+        }
+        if (fraction < 10) {
+            value.append('0');
+        }
+        return value.append(fraction);
+    }
+
+    /**
+     * measures the time spent reading from the wrapped stream
+     */
+    static final class TimedInputStream extends FilterInputStream {
+
+        private final RequestTimings timings;
+
+        TimedInputStream(InputStream in, RequestTimings timings) {
+            super(in);
+            this.timings = timings;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return super.read();
+            } finally {
+                timings.decompressNanos += System.nanoTime() - start;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return super.read(b, off, len);
+            } finally {
+                timings.decompressNanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+}
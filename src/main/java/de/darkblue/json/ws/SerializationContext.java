@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the jackson configuration used to map requests and responses. Jackson
+ * caches the (de)serializers it builds per mapper, so all servers and clients
+ * should share one context instead of building the same caches over and over
+ * again. Unless configured otherwise they all use the {@link #getDefault() default}
+ * context of the JVM.
+ * <p>
+ * A context can be configured until it is used for the first time, after that it
+ * is sealed and further configuration fails with an {@link IllegalStateException},
+ * because a mapper must not be reconfigured while other threads are using it.
+ *
+ * @author Florian Frankenberger
+ */
+public class SerializationContext {
+
+    private static final SerializationContext DEFAULT = new SerializationContext();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<Class<?>, ObjectReader> readers = new ConcurrentHashMap<>();
+    private volatile ObjectWriter writer = null;
+    private volatile boolean sealed = false;
+
+    public SerializationContext() {
+        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
+    }
+
+    /**
+     * @return the context shared by all servers and clients that are not
+     *         configured with a context of their own
+     */
+    public static SerializationContext getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * registers a jackson module, e.g. the afterburner or a module
+     * for additional data types
+     *
+     * @param module
+     */
+    public synchronized void registerModule(Module module) {
+        checkNotSealed();
+        mapper.registerModule(module);
+    }
+
+    public synchronized void configure(SerializationFeature feature, boolean state) {
+        checkNotSealed();
+        mapper.configure(feature, state);
+    }
+
+    public synchronized void configure(DeserializationFeature feature, boolean state) {
+        checkNotSealed();
+        mapper.configure(feature, state);
+    }
+
+    /**
+     * configures a feature of the mapper. Jackson 2.13 deprecated this in favour of
+     * the mapper builder, which doesn't exist in 2.8 - the oldest version this
+     * library supports.
+     *
+     * @param feature
+     * @param state
+     */
+    @SuppressWarnings("deprecation")
+    public synchronized void configure(MapperFeature feature, boolean state) {
+        checkNotSealed();
+        mapper.configure(feature, state);
+    }
+
+    /**
+     * writes the properties of objects and the entries of maps sorted by their
+     * names, so that equal objects always result in the same JSON
+     *
+     * @param canonicalProperties
+     */
+    @SuppressWarnings("deprecation") //see configure(MapperFeature, boolean)
+    public synchronized void setCanonicalProperties(boolean canonicalProperties) {
+        checkNotSealed();
+        mapper.configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, canonicalProperties);
+        mapper.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, canonicalProperties);
+    }
+
+    /**
+     * @return true if this context was used and can't be configured anymore
+     */
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    private void checkNotSealed() {
+        if (sealed) {
+            throw new IllegalStateException("Serialization context is already in use and can't be configured anymore");
+        }
+    }
+
+    ObjectMapper getMapper() {
+        if (!sealed) {
+            seal();
+        }
+        return mapper;
+    }
+
+    private synchronized void seal() {
+        sealed = true;
+    }
+
+    /**
+     * @param type
+     * @return a reader for the given type. Readers are cached so that the root
+     *         deserializer is only looked up once per type.
+     */
+    ObjectReader readerFor(Class<?> type) {
+        final ObjectReader reader = readers.get(type);
+        if (reader != null) {
+            return reader;
+        }
+        return readers.computeIfAbsent(type, getMapper()::readerFor);
+    }
+
+    ObjectWriter writer() {
+        ObjectWriter currentWriter = writer;
+        if (currentWriter == null) {
+            currentWriter = writer = getMapper().writer();
+        }
+        return currentWriter;
+    }
+
+}
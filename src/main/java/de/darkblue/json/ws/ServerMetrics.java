@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a running {@link WebServiceServer}. Unless stated otherwise
+ * all values are cumulative since the server was created.
+ *
+ * @author Florian Frankenberger
+ */
+public class ServerMetrics {
+
+    private final LongAdder rejectedRequests = new LongAdder();
+    private final LongAdder rejectedBytes = new LongAdder();
+    private final AtomicInteger inFlightRequests = new AtomicInteger();
+    private final LongAdder abandonedRequests = new LongAdder();
+    private volatile boolean draining = false;
+
+    ServerMetrics() {
+    }
+
+    void requestRejected(long bytes) {
+        rejectedRequests.increment();
+        rejectedBytes.add(bytes);
+    }
+
+    /**
+     * @return the number of requests rejected because they exceeded
+     *         their {@link RequestLimits}
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.sum();
+    }
+
+    /**
+     * @return the compressed bytes of rejected requests as announced by their
+     *         content length or read until the rejection
+     */
+    public long getRejectedBytes() {
+        return rejectedBytes.sum();
+    }
+
+    void requestStarted() {
+        inFlightRequests.incrementAndGet();
+    }
+
+    void requestFinished() {
+        inFlightRequests.decrementAndGet();
+    }
+
+    void setDraining(boolean draining) {
+        this.draining = draining;
+    }
+
+    void requestsAbandoned(int requests) {
+        abandonedRequests.add(requests);
+    }
+
+    /**
+     * @return the number of requests that are currently handled
+     */
+    public int getInFlightRequests() {
+        return inFlightRequests.get();
+    }
+
+    /**
+     * @return true while the server is shutting down and waits for
+     *         the in flight requests to finish
+     */
+    public boolean isDraining() {
+        return draining;
+    }
+
+    /**
+     * @return the number of requests that were still in flight when the
+     *         shutdown timeout expired
+     */
+    public long getAbandonedRequests() {
+        return abandonedRequests.sum();
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+/**
+ * The route table of a {@link WebService} implementation. Implementations
+ * are generated at compile time by the {@link WebServiceProcessor} and
+ * register every {@link WebServiceMethod} with a direct call instead of
+ * reflection.
+ *
+ * @author Florian Frankenberger
+ * @param <T> the type of the service implementation
+ */
+public interface ServiceRoutes<T> {
+
+    void register(T service, WebServiceServer server);
+
+}
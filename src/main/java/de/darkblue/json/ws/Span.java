@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+/**
+ * A finished unit of work: either a request handled by a {@link WebServiceServer}
+ * or a call made by a {@link WebServiceClient}.
+ *
+ * @author Florian Frankenberger
+ */
+public final class Span {
+
+    public static enum Kind {
+        SERVER, CLIENT
+    }
+
+    private final String name;
+    private final Kind kind;
+    private final TraceContext context;
+    private final long parentSpanId;
+    private final long startEpochMillis;
+    private final long startNanos;
+
+    private long durationNanos;
+    private int status;
+
+    Span(String name, Kind kind, TraceContext context, long parentSpanId) {
+        this.name = name;
+        this.kind = kind;
+        this.context = context;
+        this.parentSpanId = parentSpanId;
+        this.startEpochMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    void finish(int status) {
+        this.durationNanos = System.nanoTime() - startNanos;
+        this.status = status;
+    }
+
+    /**
+     * @return the path of a server span or the url of a client span
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public TraceContext getContext() {
+        return context;
+    }
+
+    /**
+     * @return the id of the parent span or 0 if this span is the root of its trace
+     */
+    public long getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return the HTTP status of the request or 0 if no response was received
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + name + " " + context + " " + status + " " + (durationNanos / 1000) + "us";
+    }
+
+}
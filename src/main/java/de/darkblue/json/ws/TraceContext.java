@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The identifiers of a span that are propagated between client and server
+ * in a W3C trace context <code>traceparent</code> header. The context of the
+ * request currently handled is bound to its thread, so that calls made by a
+ * service method continue the trace of the request.
+ *
+ * @author Florian Frankenberger
+ */
+public final class TraceContext {
+
+    private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<>();
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int TRACEPARENT_LENGTH = 55;
+
+    private final long traceIdHigh;
+    private final long traceIdLow;
+    private final long spanId;
+    private final boolean sampled;
+
+    TraceContext(long traceIdHigh, long traceIdLow, long spanId, boolean sampled) {
+        this.traceIdHigh = traceIdHigh;
+        this.traceIdLow = traceIdLow;
+        this.spanId = spanId;
+        this.sampled = sampled;
+    }
+
+    static TraceContext newRoot(boolean sampled) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        return new TraceContext(random.nextLong(), nonZero(random), nonZero(random), sampled);
+    }
+
+    TraceContext newChild() {
+        return new TraceContext(traceIdHigh, traceIdLow, nonZero(ThreadLocalRandom.current()), sampled);
+    }
+
+    private static long nonZero(ThreadLocalRandom random) {
+        long value;
+        do {
+            value = random.nextLong();
+        } while (value == 0);
+        return value;
+    }
+
+    /**
+     * @return the context of the request handled by the current thread or null
+     */
+    public static TraceContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * binds the given context to the current thread
+     *
+     * @return the previously bound context that should be restored afterwards
+     */
+    static TraceContext bind(TraceContext context) {
+        final TraceContext previous = CURRENT.get();
+        CURRENT.set(context);
+        return previous;
+    }
+
+    public long getTraceIdHigh() {
+        return traceIdHigh;
+    }
+
+    public long getTraceIdLow() {
+        return traceIdLow;
+    }
+
+    public long getSpanId() {
+        return spanId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * @return the trace id as 32 hex digits
+     */
+    public String getTraceId() {
+        final char[] chars = new char[32];
+        appendHex(chars, 0, traceIdHigh);
+        appendHex(chars, 16, traceIdLow);
+        return new String(chars);
+    }
+
+    /**
+     * @return the value of the traceparent header for this context
+     */
+    public String toTraceparent() {
+        final char[] chars = new char[TRACEPARENT_LENGTH];
+        chars[0] = '0';
+        chars[1] = '0';
+        chars[2] = '-';
+        appendHex(chars, 3, traceIdHigh);
+        appendHex(chars, 19, traceIdLow);
+        chars[35] = '-';
+        appendHex(chars, 36, spanId);
+        chars[52] = '-';
+        chars[53] = '0';
+        chars[54] = sampled ? '1' : '0';
+        return new String(chars);
+    }
+
+    /**
+     * parses a traceparent header
+     *
+     * @param traceparent the header value
+     * @return the context or null if the header is missing or malformed
+     */
+    public static TraceContext parse(String traceparent) {
+        if (traceparent == null || traceparent.length() < TRACEPARENT_LENGTH
+                || traceparent.charAt(2) != '-' || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-') {
+            return null;
+        }
+        try {
+            final long traceIdHigh = parseHex(traceparent, 3);
+            final long traceIdLow = parseHex(traceparent, 19);
+            final long spanId = parseHex(traceparent, 36);
+            final int flags = Character.digit(traceparent.charAt(54), 16);
+            if ((traceIdHigh == 0 && traceIdLow == 0) || spanId == 0 || flags < 0) {
+                return null;
+            }
+            return new TraceContext(traceIdHigh, traceIdLow, spanId, (flags & 1) != 0);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long parseHex(String value, int offset) {
+        long result = 0;
+        for (int i = offset; i < offset + 16; i++) {
+            final int digit = Character.digit(value.charAt(i), 16);
+            if (digit < 0) {
+                throw new NumberFormatException();
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+
+    private static void appendHex(char[] chars, int offset, long value) {
+        for (int i = 15; i >= 0; i--) {
+            chars[offset + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toTraceparent();
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Starts spans for requests and calls and hands the finished ones to a
+ * {@link SpanExporter}. Finished spans are collected in a bounded lock-free
+ * buffer that is drained by a background thread; spans that don't fit in the
+ * buffer are dropped instead of blocking the request.
+ * <p>
+ * A trace is sampled if the incoming request says so, or - for new traces -
+ * with the configured sample rate. Unsampled requests that carry no trace
+ * context cost nothing but a header lookup. The same tracer can be used by
+ * a {@link WebServiceServer} and any number of {@link WebServiceClient}s.
+ *
+ * @author Florian Frankenberger
+ */
+public class Tracer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(Tracer.class.getName());
+
+    public static final String TRACEPARENT_HEADER = "traceparent";
+
+    private static final int BATCH_SIZE = 512;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final SpanExporter exporter;
+    private final int capacity;
+
+    private final Queue<Span> buffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final LongAdder droppedSpans = new LongAdder();
+    private final LongAdder exportedSpans = new LongAdder();
+
+    private final Thread exportThread;
+    private volatile double sampleRate = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * creates a tracer that buffers up to 8192 finished spans
+     *
+     * @param exporter
+     */
+    public Tracer(SpanExporter exporter) {
+        this(exporter, 8192);
+    }
+
+    /**
+     * @param exporter receives the finished spans
+     * @param capacity the maximum number of finished spans waiting for export
+     */
+    public Tracer(SpanExporter exporter, int capacity) {
+        this.exporter = exporter;
+        this.capacity = capacity;
+        this.exportThread = new Thread(this::exportLoop, "json-ws-span-export");
+        this.exportThread.setDaemon(true);
+        this.exportThread.start();
+    }
+
+    /**
+     * the probability with which new traces are sampled
+     *
+     * @param sampleRate between 0 (default) and 1
+     */
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return the number of spans dropped because the buffer was full
+     */
+    public long getDroppedSpans() {
+        return droppedSpans.sum();
+    }
+
+    /**
+     * @return the number of spans handed to the exporter
+     */
+    public long getExportedSpans() {
+        return exportedSpans.sum();
+    }
+
+    /**
+     * starts the span of an incoming request
+     *
+     * @param name the path of the request
+     * @param traceparent the traceparent header of the request or null
+     * @return the span or null if the request is not traced
+     */
+    Span startServerSpan(String name, String traceparent) {
+        final TraceContext parent = TraceContext.parse(traceparent);
+        if (parent != null) {
+            return new Span(name, Span.Kind.SERVER, parent.newChild(), parent.getSpanId());
+        }
+        if (sample()) {
+            return new Span(name, Span.Kind.SERVER, TraceContext.newRoot(true), 0);
+        }
+        return null;
+    }
+
+    /**
+     * starts the span of an outgoing call. The call continues the trace
+     * of the request handled by the current thread if there is one.
+     *
+     * @param name the url of the call
+     * @return the span or null if the call is not traced
+     */
+    Span startClientSpan(String name) {
+        final TraceContext parent = TraceContext.current();
+        if (parent != null) {
+            return new Span(name, Span.Kind.CLIENT, parent.newChild(), parent.getSpanId());
+        }
+        if (sample()) {
+            return new Span(name, Span.Kind.CLIENT, TraceContext.newRoot(true), 0);
+        }
+        return null;
+    }
+
+    private boolean sample() {
+        final double rate = sampleRate;
+        return rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * finishes the span and queues it for export if its trace is sampled
+     *
+     * @param span
+     * @param status the HTTP status or 0 if there was no response
+     */
+    void finish(Span span, int status) {
+        span.finish(status);
+        if (!span.getContext().isSampled()) {
+            return;
+        }
+        if (buffered.incrementAndGet() > capacity) {
+            buffered.decrementAndGet();
+            droppedSpans.increment();
+            return;
+        }
+        buffer.offer(span);
+    }
+
+    /**
+     * exports all buffered spans right away. The spans are exported on the
+     * calling thread, so a slow exporter blocks the caller.
+     */
+    public void flush() {
+        drain();
+    }
+
+    private void exportLoop() {
+        while (!closed) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOS);
+            }
+        }
+        drain();
+    }
+
+    private synchronized int drain() {
+        int exported = 0;
+        List<Span> batch = new ArrayList<>(Math.min(BATCH_SIZE, Math.max(1, buffered.get())));
+        Span span;
+        while ((span = buffer.poll()) != null) {
+            buffered.decrementAndGet();
+            batch.add(span);
+            if (batch.size() == BATCH_SIZE) {
+                exported += export(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            exported += export(batch);
+        }
+        return exported;
+    }
+
+    private int export(List<Span> batch) {
+        try {
+            exporter.export(batch);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Span exporter failed, dropped " + batch.size() + " spans", e);
+        }
+        exportedSpans.add(batch.size());
+        return batch.size();
+    }
+
+    /**
+     * stops the export thread after exporting all buffered spans
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(exportThread);
+        try {
+            exportThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -20,14 +20,14 @@ package de.darkblue.json.ws;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.net.HttpURLConnection;
@@ -40,6 +40,9 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
@@ -66,11 +69,15 @@ public class WebServiceClient {
         }
     };
 
-    private final ObjectMapper mapper = new ObjectMapper();
-
     private SSLSocketFactory socketFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
     private HostnameVerifier hostnameVerifier = null;
 
+    private volatile SerializationContext serializationContext = SerializationContext.getDefault();
+    private volatile Tracer tracer = null;
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
     /**
      * constructs a ws client with default system certificates and default hostname verifier.
      * If your WS-Server has a valid SSL certificate by a major CA then this is the constructor
@@ -123,7 +130,6 @@ public class WebServiceClient {
      * @throws IOException
      */
     public WebServiceClient(InputStream trustStoreIn, String trustStorePassword, HostnameVerifier hostnameVerifier) throws IOException {
-        mapper.configure(SerializationFeature.FAIL_ON_EMPTY_BEANS, false);
         if (trustStoreIn != null && trustStorePassword != null) {
             KeyStore trustStore = prepareTrustStore(trustStoreIn, trustStorePassword);
             this.socketFactory = prepareSocketFactory(trustStore);
@@ -145,6 +151,50 @@ public class WebServiceClient {
      * @throws RemoteInvokationException
      */
     public <R, P> R call(String url, Class<R> responseClass, P parameter) throws MalformedURLException, IOException, RemoteInvokationException {
+        final Bulkhead bulkhead = lookup(bulkheads, url);
+        final CircuitBreaker circuitBreaker = lookup(circuitBreakers, url);
+        if (bulkhead == null && circuitBreaker == null) {
+            return invoke(url, responseClass, parameter);
+        }
+
+        if (bulkhead != null && !bulkhead.tryAcquire()) {
+            throw bulkhead.rejectedException;
+        }
+        try {
+            if (circuitBreaker == null) {
+                return invoke(url, responseClass, parameter);
+            }
+            final CircuitBreaker.Permission permission = circuitBreaker.tryAcquirePermission();
+            if (permission == null) {
+                throw circuitBreaker.notPermittedException;
+            }
+
+            final long start = System.nanoTime();
+            boolean failed = true;
+            try {
+                R result = invoke(url, responseClass, parameter);
+                failed = false;
+                return result;
+            } catch (RemoteServiceException e) {
+                //a rejected request says nothing about the health of the remote service
+                failed = !e.isClientError();
+                throw e;
+            } finally {
+                //recorded for every outcome (even errors) so that no half open permit gets lost
+                if (failed) {
+                    circuitBreaker.onError(permission, System.nanoTime() - start);
+                } else {
+                    circuitBreaker.onSuccess(permission, System.nanoTime() - start);
+                }
+            }
+        } finally {
+            if (bulkhead != null) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    private <R, P> R invoke(String url, Class<R> responseClass, P parameter) throws MalformedURLException, IOException, RemoteInvokationException {
         URL properURL = new URL(url);
         URLConnection connection = properURL.openConnection();
         if (connection instanceof HttpsURLConnection) {
@@ -169,44 +219,170 @@ public class WebServiceClient {
 
         ByteArrayOutputStream bOut = new ByteArrayOutputStream();
         GZIPOutputStream gzOut = new GZIPOutputStream(bOut);
-        mapper.writeValue(gzOut, parameter);
+        final SerializationContext context = this.serializationContext;
+        context.writer().writeValue(gzOut, parameter);
         gzOut.flush();
         byte[] payload = bOut.toByteArray();
 
         httpConnection.setRequestProperty("Content-Type", "application/json;charset=utf-8");
         httpConnection.setRequestProperty("Conent-Length", String.valueOf(payload.length));
-        httpConnection.connect();
+
+        final Tracer currentTracer = this.tracer;
+        final Span span = currentTracer == null ? null : currentTracer.startClientSpan(url);
+        if (span != null) {
+            httpConnection.setRequestProperty(Tracer.TRACEPARENT_HEADER, span.getContext().toTraceparent());
+        }
+        int responseCode = 0;
+
         try {
+            httpConnection.connect();
             try (OutputStream out = httpConnection.getOutputStream()) {
                 out.write(payload);
+            }
 
-                try (InputStream in = new GZIPInputStream(httpConnection.getInputStream())) {
-                    R result = null;
-                    if (responseClass != void.class && responseClass != Void.class) {
-                        result = mapper.readValue(in, responseClass);
-                    }
-                    if (httpConnection.getResponseCode() / 100 != 2) {
-                        throw new RemoteInvokationException("Response code was not 2xx but " + httpConnection.getResponseCode());
-                    }
-                    return result;
-                } catch (JsonParseException | JsonMappingException e) {
-                    throw new RemoteInvokationException("Result was illegal formated or could not be mapped to given result class", e);
+            responseCode = httpConnection.getResponseCode();
+            if (responseCode / 100 != 2) {
+                throw readError(httpConnection, responseCode);
+            }
+
+            try (InputStream in = new GZIPInputStream(httpConnection.getInputStream())) {
+                R result = null;
+                if (responseClass != void.class && responseClass != Void.class) {
+                    result = context.readerFor(responseClass).readValue(in);
                 }
+                return result;
+            } catch (JsonParseException | JsonMappingException e) {
+                throw new RemoteInvokationException("Result was illegal formated or could not be mapped to given result class", e);
             }
         } finally {
             httpConnection.disconnect();
+            if (span != null) {
+                currentTracer.finish(span, responseCode);
+            }
+        }
+    }
+
+    /**
+     * maps the {@link JsonError} body of a failed call to an exception. Responses
+     * that don't carry a JsonError (e.g. from a proxy in between) are mapped by
+     * their status code only.
+     */
+    private RemoteServiceException readError(HttpURLConnection httpConnection, int responseCode) {
+        final InputStream errorStream = httpConnection.getErrorStream();
+        if (errorStream != null) {
+            try (InputStream in = new GZIPInputStream(errorStream)) {
+                final JsonError error = serializationContext.readerFor(JsonError.class).readValue(in);
+                return new RemoteServiceException(responseCode, error.error, error.message);
+            } catch (IOException e) {
+                //no structured error
+            }
+        }
+        return new RemoteServiceException(responseCode, null, "Response code was not 2xx but " + responseCode);
+    }
+
+    /**
+     * maps requests and responses with the given context instead of
+     * the {@link SerializationContext#getDefault() default} one
+     *
+     * @param serializationContext
+     */
+    public void setSerializationContext(SerializationContext serializationContext) {
+        this.serializationContext = serializationContext;
+    }
+
+    /**
+     * traces all calls with the given tracer. Calls made while a {@link WebServiceServer}
+     * handles a request continue the trace of that request.
+     *
+     * @param tracer the tracer or null to disable tracing
+     */
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * guards calls with a circuit breaker. Calls are failing fast with a
+     * {@link RemoteInvokationException} while the breaker is open.
+     *
+     * @param url either the url of a single remote method or the url prefix
+     *            of a remote service as passed to {@link #proxyRemoteService(String, Class)}.
+     *            A breaker for a single method takes precedence over one for its service.
+     * @param circuitBreaker the circuit breaker or null to remove it
+     */
+    public void setCircuitBreaker(String url, CircuitBreaker circuitBreaker) {
+        register(circuitBreakers, url, circuitBreaker);
+    }
+
+    /**
+     * limits the number of concurrent calls with a bulkhead. Calls exceeding
+     * the limit are failing fast with a {@link RemoteInvokationException}.
+     *
+     * @param url either the url of a single remote method or the url prefix
+     *            of a remote service as passed to {@link #proxyRemoteService(String, Class)}.
+     *            A bulkhead for a single method takes precedence over one for its service.
+     * @param bulkhead the bulkhead or null to remove it
+     */
+    public void setBulkhead(String url, Bulkhead bulkhead) {
+        register(bulkheads, url, bulkhead);
+    }
+
+    /**
+     * @return all registered circuit breakers by their url
+     */
+    public Map<String, CircuitBreaker> getCircuitBreakers() {
+        return Collections.unmodifiableMap(circuitBreakers);
+    }
+
+    /**
+     * @return all registered bulkheads by their url
+     */
+    public Map<String, Bulkhead> getBulkheads() {
+        return Collections.unmodifiableMap(bulkheads);
+    }
+
+    private static <V> void register(Map<String, V> registry, String url, V value) {
+        final String key = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        if (value == null) {
+            registry.remove(key);
+        } else {
+            registry.put(key, value);
         }
     }
 
+    private static <V> V lookup(Map<String, V> registry, String url) {
+        if (registry.isEmpty()) {
+            return null;
+        }
+        V value = registry.get(url);
+        if (value == null) {
+            final int lastSlash = url.lastIndexOf('/');
+            if (lastSlash > 0) {
+                value = registry.get(url.substring(0, lastSlash));
+            }
+        }
+        return value;
+    }
+
     /**
      * creates a proxy object where all calls
-     * are redirected to the remote webservice
+     * are redirected to the remote webservice. If the interface is annotated
+     * with {@link RemoteService} the stub generated at compile time is used
+     * instead of a dynamic proxy.
      *
      * @param <T>
      * @param iface
      * @return
      */
     public <T> T proxyRemoteService(String urlPrefix, Class<T> iface) {
+        final Constructor<? extends T> stubConstructor = GeneratedCode.stubConstructor(iface);
+        if (stubConstructor != null) {
+            try {
+                return stubConstructor.newInstance(this, urlPrefix);
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+                throw new IllegalStateException("Could not instantiate generated stub for " + iface.getName(), ex);
+            }
+        }
+
         final String fullPrefix = urlPrefix + (urlPrefix.endsWith("/") ? "" : "/");
         return (T) Proxy.newProxyInstance(iface.getClassLoader(), new Class<?>[] { iface },
                 (Object proxy, Method method, Object[] args) -> {
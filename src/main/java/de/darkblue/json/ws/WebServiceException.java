@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+/**
+ * Can be thrown by a service method to answer the request with the given
+ * HTTP status code and a {@link JsonError} body. As this is only used to
+ * signal an error to the client no stack trace is recorded.
+ *
+ * @author Florian Frankenberger
+ */
+public class WebServiceException extends RuntimeException {
+
+    private final int status;
+    private final String error;
+
+    /**
+     * @param status the HTTP status code of the response
+     * @param error a short machine readable error code like "bad_request"
+     * @param message the human readable message
+     */
+    public WebServiceException(int status, String error, String message) {
+        this(status, error, message, null);
+    }
+
+    /**
+     * @param status the HTTP status code of the response
+     * @param error a short machine readable error code like "bad_request"
+     * @param message the human readable message
+     * @param cause the cause that gets logged on the server side
+     */
+    public WebServiceException(int status, String error, String message, Throwable cause) {
+        super(message, cause, false, false);
+        this.status = status;
+        this.error = error;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+}
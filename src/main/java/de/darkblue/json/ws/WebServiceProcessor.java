@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates at compile time the route table of every {@link WebService}
+ * implementation and a client stub for every {@link RemoteService} interface.
+ * At runtime {@link WebServiceServer#addServiceImplementation(Object)} and
+ * {@link WebServiceClient#proxyRemoteService(String, Class)} use the generated
+ * classes when present and fall back to reflection otherwise. Types the
+ * generated code could not access are skipped with a note.
+ * <p>
+ * The processor is registered as a service, so it runs automatically when
+ * this library is on the compile classpath.
+ *
+ * @author Florian Frankenberger
+ */
+public class WebServiceProcessor extends AbstractProcessor {
+
+    private static final String HEADER = "// Generated by " + WebServiceProcessor.class.getName() + ", do not edit\n";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        final Set<String> types = new LinkedHashSet<>();
+        types.add(WebService.class.getCanonicalName());
+        types.add(RemoteService.class.getCanonicalName());
+        return types;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(WebService.class))) {
+            if (type.getKind() == ElementKind.CLASS) {
+                generateRoutes(type);
+            }
+        }
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(RemoteService.class))) {
+            if (type.getKind() == ElementKind.INTERFACE) {
+                generateStub(type);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * mirrors the reflective scan of {@link WebServiceServer#addServiceImplementation(Object)}
+     */
+    private void generateRoutes(TypeElement type) {
+        final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        if (!type.getTypeParameters().isEmpty() || !isAccessible(type, pkg)) {
+            skip(type, "it is generic or not accessible");
+            return;
+        }
+
+        final WebService webService = type.getAnnotation(WebService.class);
+        final String pathPrefix = webService.path() + (webService.path().endsWith("/") ? "" : "/");
+
+        final List<String> mappings = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            final WebServiceMethod webServiceMethod = method.getAnnotation(WebServiceMethod.class);
+            if (webServiceMethod == null
+                    || !method.getModifiers().contains(Modifier.PUBLIC)
+                    || method.getParameters().size() > 1
+                    || isType(method.getReturnType(), Void.class)) {
+                continue;
+            }
+
+            final TypeMirror parameterType = method.getParameters().isEmpty() ? null : method.getParameters().get(0).asType();
+            if (parameterType != null && !isAccessible(parameterType, pkg)) {
+                skip(type, "parameter type " + parameterType + " of " + method.getSimpleName() + "() is not accessible");
+                return;
+            }
+
+            final String methodName = "__default__".equals(webServiceMethod.name()) ? method.getSimpleName().toString() : webServiceMethod.name();
+            final String parameterClass = parameterType == null
+                    ? JsonEmpty.class.getCanonicalName()
+                    : processingEnv.getTypeUtils().erasure(parameterType).toString();
+            final String target = (method.getModifiers().contains(Modifier.STATIC) ? type.getQualifiedName().toString() : "service")
+                    + "." + method.getSimpleName() + "(" + (parameterType == null ? "" : "req") + ")";
+            final String invocation = method.getReturnType().getKind() == TypeKind.VOID
+                    ? target + ";\n                return null;"
+                    : "return " + target + ";";
+
+            final StringBuilder mapping = new StringBuilder();
+            mapping.append("        server.addJSONMapping(").append(literal(pathPrefix + methodName)).append(", ")
+                    .append(parameterClass).append(".class, req -> {\n");
+            if (method.getThrownTypes().isEmpty()) {
+                mapping.append("            ").append(invocation.replace("\n    ", "\n")).append("\n");
+            } else {
+                mapping.append("            try {\n")
+                        .append("                ").append(invocation).append("\n")
+                        .append("            } catch (RuntimeException | Error e) {\n")
+                        .append("                throw e;\n")
+                        .append("            } catch (Throwable e) {\n")
+                        .append("                throw new ").append(WebServiceException.class.getCanonicalName())
+                        .append("(500, \"internal_error\", \"Internal server error\", e);\n")
+                        .append("            }\n");
+            }
+            mapping.append("        });\n");
+            mappings.add(mapping.toString());
+        }
+
+        final String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        final String generatedName = GeneratedCode.generatedName(binaryName, GeneratedCode.ROUTES_SUFFIX);
+        final StringBuilder source = new StringBuilder();
+        appendHeader(source, pkg);
+        source.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+                .append("public final class ").append(simpleName(generatedName))
+                .append(" implements ").append(ServiceRoutes.class.getCanonicalName())
+                .append("<").append(type.getQualifiedName()).append("> {\n\n")
+                .append("    @Override\n")
+                .append("    public void register(final ").append(type.getQualifiedName()).append(" service, final ")
+                .append(WebServiceServer.class.getCanonicalName()).append(" server) {\n");
+        for (String mapping : mappings) {
+            source.append(mapping);
+        }
+        source.append("    }\n\n}\n");
+        write(generatedName, source, type);
+    }
+
+    /**
+     * mirrors the dynamic proxy of {@link WebServiceClient#proxyRemoteService(String, Class)}
+     */
+    private void generateStub(TypeElement type) {
+        final PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        if (!type.getTypeParameters().isEmpty() || !isAccessible(type, pkg)) {
+            skip(type, "it is generic or not accessible");
+            return;
+        }
+
+        final TypeMirror exceptionType = processingEnv.getElementUtils().getTypeElement(Exception.class.getCanonicalName()).asType();
+        final TypeMirror runtimeExceptionType = processingEnv.getElementUtils().getTypeElement(RuntimeException.class.getCanonicalName()).asType();
+
+        final Set<String> signatures = new HashSet<>();
+        final List<String> methods = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if (method.getModifiers().contains(Modifier.STATIC)
+                    || method.getEnclosingElement().getKind() != ElementKind.INTERFACE
+                    || !signatures.add(method.getSimpleName() + "(" + processingEnv.getTypeUtils().erasure(method.asType()) + ")")) {
+                continue;
+            }
+            if (method.getParameters().size() > 1 || !method.getTypeParameters().isEmpty()) {
+                skip(type, method.getSimpleName() + "() has more than one parameter or is generic");
+                return;
+            }
+            final TypeMirror returnType = method.getReturnType();
+            final TypeMirror parameterType = method.getParameters().isEmpty() ? null : method.getParameters().get(0).asType();
+            if (!isAccessible(returnType, pkg) || (parameterType != null && !isAccessible(parameterType, pkg))) {
+                skip(type, "the signature of " + method.getSimpleName() + "() is not accessible");
+                return;
+            }
+
+            final boolean isVoid = returnType.getKind() == TypeKind.VOID;
+            //the client returns the erasure of the return type, so only parameterized types need a cast
+            final boolean needsCast = !isVoid
+                    && !processingEnv.getTypeUtils().isSameType(returnType, processingEnv.getTypeUtils().erasure(returnType));
+            final String argument = parameterType == null
+                    ? "new " + JsonEmpty.class.getCanonicalName() + "()"
+                    : (parameterType.getKind().isPrimitive() ? "arg" : "arg == null ? new " + JsonEmpty.class.getCanonicalName() + "() : arg");
+            final String call = "client.call(urlPrefix + " + literal(method.getSimpleName().toString()) + ", "
+                    + (isVoid ? "void" : processingEnv.getTypeUtils().erasure(returnType).toString()) + ".class, " + argument + ")";
+
+            final StringBuilder stub = new StringBuilder();
+            stub.append("    @Override\n")
+                    .append("    public ").append(returnType).append(" ").append(method.getSimpleName()).append("(")
+                    .append(parameterType == null ? "" : parameterType + " arg").append(")");
+            if (!method.getThrownTypes().isEmpty()) {
+                stub.append(" throws ");
+                for (int i = 0; i < method.getThrownTypes().size(); i++) {
+                    stub.append(i > 0 ? ", " : "").append(method.getThrownTypes().get(i));
+                }
+            }
+            stub.append(" {\n")
+                    .append("        try {\n")
+                    .append("            ").append(isVoid ? call + ";" : "return " + (needsCast ? "(" + returnType + ") " : "") + call + ";").append("\n")
+                    .append("        } catch (RuntimeException e) {\n")
+                    .append("            throw e;\n")
+                    .append("        } catch (Exception e) {\n");
+            for (TypeMirror thrownType : method.getThrownTypes()) {
+                if (!processingEnv.getTypeUtils().isSubtype(thrownType, exceptionType)
+                        || processingEnv.getTypeUtils().isSubtype(thrownType, runtimeExceptionType)) {
+                    continue;
+                }
+                stub.append("            if (e instanceof ").append(processingEnv.getTypeUtils().erasure(thrownType)).append(") {\n")
+                        .append("                throw (").append(thrownType).append(") e;\n")
+                        .append("            }\n");
+            }
+            stub.append("            throw new java.lang.reflect.UndeclaredThrowableException(e);\n")
+                    .append("        }\n")
+                    .append("    }\n");
+            methods.add(stub.toString());
+        }
+
+        final String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+        final String generatedName = GeneratedCode.generatedName(binaryName, GeneratedCode.STUB_SUFFIX);
+        final StringBuilder source = new StringBuilder();
+        appendHeader(source, pkg);
+        source.append("@SuppressWarnings({\"unchecked\", \"rawtypes\"})\n")
+                .append("public final class ").append(simpleName(generatedName))
+                .append(" implements ").append(type.getQualifiedName()).append(" {\n\n")
+                .append("    private final ").append(WebServiceClient.class.getCanonicalName()).append(" client;\n")
+                .append("    private final String urlPrefix;\n\n")
+                .append("    public ").append(simpleName(generatedName)).append("(")
+                .append(WebServiceClient.class.getCanonicalName()).append(" client, String urlPrefix) {\n")
+                .append("        this.client = client;\n")
+                .append("        this.urlPrefix = urlPrefix + (urlPrefix.endsWith(\"/\") ? \"\" : \"/\");\n")
+                .append("    }\n");
+        for (String method : methods) {
+            source.append("\n").append(method);
+        }
+        source.append("\n}\n");
+        write(generatedName, source, type);
+    }
+
+    private void appendHeader(StringBuilder source, PackageElement pkg) {
+        source.append(HEADER);
+        if (!pkg.isUnnamed()) {
+            source.append("package ").append(pkg.getQualifiedName()).append(";\n");
+        }
+        source.append("\n");
+    }
+
+    private void write(String generatedName, CharSequence source, TypeElement originatingElement) {
+        try (Writer writer = processingEnv.getFiler().createSourceFile(generatedName, originatingElement).openWriter()) {
+            writer.append(source);
+        } catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not write " + generatedName + ": " + ex.getMessage(), originatingElement);
+        }
+    }
+
+    private void skip(TypeElement type, String reason) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                "No code generated for " + type.getQualifiedName() + " as " + reason + ", reflection is used instead", type);
+    }
+
+    private boolean isType(TypeMirror type, Class<?> clazz) {
+        return type.getKind() == TypeKind.DECLARED
+                && ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().contentEquals(clazz.getCanonicalName());
+    }
+
+    /**
+     * checks if the given type can be referenced from a class in the given package
+     */
+    private boolean isAccessible(TypeMirror type, PackageElement pkg) {
+        switch (type.getKind()) {
+            case ARRAY:
+                return isAccessible(((ArrayType) type).getComponentType(), pkg);
+            case DECLARED:
+                for (TypeMirror typeArgument : ((DeclaredType) type).getTypeArguments()) {
+                    if (!isAccessible(typeArgument, pkg)) {
+                        return false;
+                    }
+                }
+                return isAccessible((TypeElement) ((DeclaredType) type).asElement(), pkg);
+            case WILDCARD:
+                final WildcardType wildcard = (WildcardType) type;
+                return (wildcard.getExtendsBound() == null || isAccessible(wildcard.getExtendsBound(), pkg))
+                        && (wildcard.getSuperBound() == null || isAccessible(wildcard.getSuperBound(), pkg));
+            case TYPEVAR:
+                return true;
+            default:
+                return type.getKind().isPrimitive() || type.getKind() == TypeKind.VOID;
+        }
+    }
+
+    private boolean isAccessible(TypeElement type, PackageElement pkg) {
+        final boolean samePackage = processingEnv.getElementUtils().getPackageOf(type).equals(pkg);
+        Element element = type;
+        while (element instanceof TypeElement) {
+            final TypeElement typeElement = (TypeElement) element;
+            if (typeElement.getNestingKind() == NestingKind.LOCAL || typeElement.getNestingKind() == NestingKind.ANONYMOUS
+                    || typeElement.getModifiers().contains(Modifier.PRIVATE)
+                    || (!samePackage && !typeElement.getModifiers().contains(Modifier.PUBLIC))) {
+                return false;
+            }
+            element = element.getEnclosingElement();
+        }
+        return true;
+    }
+
+    private static String simpleName(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+    }
+
+    private String literal(String value) {
+        return processingEnv.getElementUtils().getConstantExpression(value);
+    }
+
+}
@@ -21,16 +21,18 @@ package de.darkblue.json.ws;
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.eclipse.jetty.http.HttpVersion;
+import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
-import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
@@ -52,7 +54,14 @@ public class WebServiceServer {
     private File keyStoreFile = null;
     private String keyStorePassword = null;
 
-    private final JsonHandler jsonHandler = new JsonHandler();
+    private int warmUpIterations = 0;
+    private String healthPath = null;
+    private long shutdownTimeoutMillis = TimeUnit.SECONDS.toMillis(30);
+    private volatile boolean ready = false;
+    private Thread shutdownHook = null;
+
+    private final ServerMetrics metrics = new ServerMetrics();
+    private final JsonHandler jsonHandler = new JsonHandler(metrics);
 
     /**
      * creates a webservice with http port set to 8080
@@ -73,6 +82,106 @@ public class WebServiceServer {
         this.keyStorePassword = keyStorePassword;
     }
 
+    /**
+     * enables the warm up phase. Before the server starts accepting connections
+     * every mapping is called the given number of times with a default instance
+     * of its request class. The requests are sent through an in-memory connector
+     * and handled like real ones, which loads all classes and fills jackson's
+     * caches, so the first real requests don't hit a cold server.
+     * <p>
+     * Note that the handlers are really invoked. Handlers with side effects can
+     * check {@link #isReady()}, which only becomes true after the warm up.
+     *
+     * @param warmUpIterations the number of requests per mapping or 0 to disable the warm up
+     */
+    public void setWarmUpIterations(int warmUpIterations) {
+        this.warmUpIterations = warmUpIterations;
+    }
+
+    /**
+     * answers requests to the given path with 200 once the server is ready
+     * and with 503 otherwise
+     *
+     * @param healthPath the path, e.g. /health or null to disable it
+     */
+    public void setHealthPath(String healthPath) {
+        this.healthPath = healthPath;
+    }
+
+    /**
+     * the maximum time {@link #stop()} waits for in flight requests
+     * to finish before the server is stopped anyway
+     *
+     * @param timeout
+     * @param unit
+     */
+    public void setShutdownTimeout(long timeout, TimeUnit unit) {
+        this.shutdownTimeoutMillis = unit.toMillis(timeout);
+    }
+
+    /**
+     * @return true if the server is started and finished its warm up
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * maps requests and responses with the given context instead of the
+     * {@link SerializationContext#getDefault() default} one. Must be called
+     * before the server is started.
+     *
+     * @param serializationContext
+     */
+    public void setSerializationContext(SerializationContext serializationContext) {
+        jsonHandler.setSerializationContext(serializationContext);
+    }
+
+    /**
+     * traces all requests with the given tracer. The trace context of incoming
+     * requests is continued, and calls made by a {@link WebServiceClient} while
+     * a request is handled become part of the same trace.
+     *
+     * @param tracer the tracer or null to disable tracing
+     */
+    public void setTracer(Tracer tracer) {
+        jsonHandler.setTracer(tracer);
+    }
+
+    /**
+     * adds a Server-Timing header to every successful response that breaks the
+     * time spent down into decompress, parse, invoke and serialize
+     *
+     * @param serverTimingEnabled
+     */
+    public void setServerTimingEnabled(boolean serverTimingEnabled) {
+        jsonHandler.setServerTimingEnabled(serverTimingEnabled);
+    }
+
+    /**
+     * sets the limits for all requests that have no limits
+     * set for their path
+     *
+     * @param limits
+     */
+    public void setRequestLimits(RequestLimits limits) {
+        jsonHandler.setDefaultLimits(limits);
+    }
+
+    /**
+     * sets the limits for requests to the given path
+     *
+     * @param path the full path of the mapping, e.g. /json/hi
+     * @param limits
+     */
+    public void setRequestLimits(String path, RequestLimits limits) {
+        jsonHandler.putLimits(path, limits);
+    }
+
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
     public <T> void addJSONMapping(String path, Class<T> requestClass, Function<T, Object> requestHandler) {
         jsonHandler.putMapping(path, requestClass, requestHandler);
     }
@@ -81,6 +190,10 @@ public class WebServiceServer {
      * scans the given instance for methods with @WebServiceMethod annotation
      * and makes them public. The instance itself must be annotated with
      * the @WebService annotation to specify a path.
+     * <p>
+     * If the {@link WebServiceProcessor} generated the routes of the service
+     * class at compile time these are used instead of scanning the class
+     * by reflection.
      *
      * @param service
      */
@@ -88,6 +201,12 @@ public class WebServiceServer {
         final Class<? extends Object> clazz = service.getClass();
         final WebService webService = clazz.getAnnotation(WebService.class);
         if (webService != null) {
+            final ServiceRoutes<Object> routes = (ServiceRoutes<Object>) GeneratedCode.loadRoutes(clazz);
+            if (routes != null) {
+                routes.register(service, this);
+                return;
+            }
+
             final String pathPrefix = webService.path() + (webService.path().endsWith("/") ? "" : "/");
             for (final Method method : clazz.getMethods()) {
                 WebServiceMethod webServiceMethod = method.getAnnotation(WebServiceMethod.class);
@@ -102,10 +221,20 @@ public class WebServiceServer {
                                 return method.invoke(service);
                             }
                             return method.invoke(service, req);
-                        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-                            LOGGER.log(Level.WARNING, "Problem executing service method " + clazz.getCanonicalName() + "." + method.getName() + "()", ex);
+                        } catch (InvocationTargetException ex) {
+                            final Throwable cause = ex.getCause();
+                            if (cause instanceof RuntimeException) {
+                                throw (RuntimeException) cause;
+                            }
+                            if (cause instanceof Error) {
+                                throw (Error) cause;
+                            }
+                            throw new WebServiceException(500, "internal_error", "Internal server error", cause);
+                        } catch (IllegalAccessException | IllegalArgumentException ex) {
+                            throw new WebServiceException(500, "internal_error", "Internal server error",
+                                    new IllegalStateException("Problem executing service method "
+                                            + clazz.getCanonicalName() + "." + method.getName() + "()", ex));
                         }
-                        return null;
                     });
                 }
             }
@@ -126,7 +255,10 @@ public class WebServiceServer {
 
             server.setDumpAfterStart(false);
             server.setDumpBeforeStop(false);
-            server.setStopAtShutdown(true);
+            if (shutdownHook == null) {
+                shutdownHook = new Thread(this::stop, "webservice-shutdown");
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
 
             HttpConfiguration basicConfiguration = new HttpConfiguration();
             basicConfiguration.setOutputBufferSize(32768);
@@ -138,7 +270,7 @@ public class WebServiceServer {
             // HTTP
             if (this.httpPort != null) {
                 final HttpConfiguration httpConfiguration = new HttpConfiguration(basicConfiguration);
-                ServerConnector http = new ServerConnector(server, new HttpConnectionFactory(httpConfiguration));
+                DrainableServerConnector http = new DrainableServerConnector(server, new HttpConnectionFactory(httpConfiguration));
                 http.setPort(this.httpPort);
                 http.setIdleTimeout(30000);
                 server.addConnector(http);
@@ -164,7 +296,7 @@ public class WebServiceServer {
                     HttpConfiguration https_config = new HttpConfiguration(basicConfiguration);
                     https_config.addCustomizer(new SecureRequestCustomizer());
 
-                    ServerConnector sslConnector = new ServerConnector(server,
+                    DrainableServerConnector sslConnector = new DrainableServerConnector(server,
                             new SslConnectionFactory(sslContextFactory, HttpVersion.HTTP_1_1.asString()),
                             new HttpConnectionFactory(https_config));
                     sslConnector.setPort(this.httpsPort);
@@ -176,11 +308,21 @@ public class WebServiceServer {
                 }
             }
 
+            if (this.warmUpIterations > 0) {
+                LOGGER.log(Level.INFO, "\twarming up with " + this.warmUpIterations + " iterations per mapping");
+                warmUp(basicConfiguration);
+            }
+
             HandlerList handlerList = new HandlerList();
-            handlerList.setHandlers(new Handler[]{ jsonHandler });
+            if (this.healthPath != null) {
+                handlerList.setHandlers(new Handler[]{ new HealthHandler(healthPath, this::isReady), jsonHandler });
+            } else {
+                handlerList.setHandlers(new Handler[]{ jsonHandler });
+            }
             server.setHandler(handlerList);
 
             server.start();
+            ready = true;
             LOGGER.log(Level.INFO, "\tserver runnning.");
 
             if (join) {
@@ -191,13 +333,81 @@ public class WebServiceServer {
         }
     }
 
+    /**
+     * runs the warm up requests on a server of their own that is only reachable
+     * through an in-memory connector, so that no port is opened before the warm
+     * up is done
+     */
+    private void warmUp(HttpConfiguration configuration) throws Exception {
+        final Server warmUpServer = new Server();
+        final LocalConnector connector = new LocalConnector(warmUpServer, new HttpConnectionFactory(configuration));
+        warmUpServer.addConnector(connector);
+        warmUpServer.setHandler(jsonHandler);
+        warmUpServer.start();
+        try {
+            jsonHandler.warmUp(connector, this.warmUpIterations);
+        } finally {
+            warmUpServer.stop();
+            warmUpServer.setHandler(null);
+        }
+    }
+
+    /**
+     * shuts the server down gracefully: it reports not to be ready, stops
+     * accepting new connections and asks keep-alive clients to close their
+     * connections. Then it waits up to the shutdown timeout for the requests
+     * in flight to finish before the server is stopped.
+     * <p>
+     * This is also done by a shutdown hook when the JVM terminates.
+     */
     public void stop() {
         try {
             LOGGER.log(Level.INFO, "Shutting down webservice ...");
+            removeShutdownHook();
+            ready = false;
+            //set before the connectors stop accepting, which can take a moment,
+            //so that requests on keep-alive connections already answer with Connection: close
+            metrics.setDraining(true);
+            for (Connector connector : server.getConnectors()) {
+                if (connector instanceof DrainableServerConnector) {
+                    ((DrainableServerConnector) connector).stopAccepting();
+                }
+            }
+            drain();
             this.server.stop();
             LOGGER.log(Level.INFO, "\tserver stopped.");
         } catch (Exception ex) {
             LOGGER.log(Level.WARNING, "Problem when shutting down server", ex);
+        } finally {
+            metrics.setDraining(false);
+        }
+    }
+
+    private synchronized void removeShutdownHook() {
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                //the JVM is already shutting down
+            }
+        }
+        shutdownHook = null;
+    }
+
+    private void drain() throws InterruptedException {
+        final long start = System.nanoTime();
+        final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(shutdownTimeoutMillis);
+        int inFlight = metrics.getInFlightRequests();
+        if (inFlight > 0) {
+            LOGGER.log(Level.INFO, "\twaiting for " + inFlight + " requests in flight");
+        }
+        while (inFlight > 0 && System.nanoTime() - start < timeoutNanos) {
+            Thread.sleep(10);
+            inFlight = metrics.getInFlightRequests();
+        }
+        if (inFlight > 0) {
+            metrics.requestsAbandoned(inFlight);
+            LOGGER.log(Level.WARNING, "\tshutdown timeout expired with " + inFlight + " requests in flight");
         }
     }
 
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ *
+ * @author Florian Frankenberger
+ */
+public class ByteBufferOutputStreamTest {
+
+    @Test
+    public void roundTrip() throws Exception {
+        final ByteBufferPool pool = new ArrayByteBufferPool();
+        final byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+
+        final Server server = new Server();
+        final LocalConnector connector = new LocalConnector(server);
+        server.addConnector(connector);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                    HttpServletResponse response) throws IOException {
+                ByteBufferOutputStream bOut = new ByteBufferOutputStream(pool, 4096);
+                try {
+                    bOut.write(data, 0, 10);
+                    bOut.write(data[10]);
+                    bOut.write(data, 11, data.length - 11);
+                    assertEquals(data.length, bOut.size());
+
+                    response.setContentLength(bOut.size());
+                    bOut.writeTo(baseRequest.getResponse().getHttpOutput());
+                } finally {
+                    bOut.release();
+                }
+                baseRequest.setHandled(true);
+            }
+        });
+        server.start();
+        try {
+            final ByteBuffer response = connector.getResponses(ByteBuffer.wrap(
+                    "GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)),
+                    5, TimeUnit.SECONDS);
+            final byte[] bytes = new byte[response.remaining()];
+            response.get(bytes);
+            final int bodyStart = new String(bytes, StandardCharsets.ISO_8859_1).indexOf("\r\n\r\n") + 4;
+            assertArrayEquals(data, Arrays.copyOfRange(bytes, bodyStart, bytes.length));
+        } finally {
+            server.stop();
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Florian Frankenberger
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensOnFailureRate() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 10);
+        circuitBreaker.setMinimumNumberOfCalls(4);
+        circuitBreaker.setFailureRateThreshold(50f);
+
+        for (int i = 0; i < 2; i++) {
+            circuitBreaker.onSuccess(acquire(circuitBreaker), 0);
+        }
+        circuitBreaker.onError(acquire(circuitBreaker), 0);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+
+        circuitBreaker.onError(acquire(circuitBreaker), 0);
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        assertNull(circuitBreaker.tryAcquirePermission());
+        assertEquals(1, circuitBreaker.getNotPermittedCalls());
+        assertEquals(1, circuitBreaker.getStateTransitions(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void opensOnSlowCallRate() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 4);
+        circuitBreaker.setMinimumNumberOfCalls(4);
+        circuitBreaker.setSlowCallDuration(10, TimeUnit.MILLISECONDS);
+        circuitBreaker.setSlowCallRateThreshold(75f);
+
+        for (int i = 0; i < 4; i++) {
+            circuitBreaker.onSuccess(acquire(circuitBreaker), TimeUnit.MILLISECONDS.toNanos(i == 0 ? 1 : 20));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+    }
+
+    @Test
+    public void closesAfterSuccessfulTrialCalls() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 2);
+        circuitBreaker.setMinimumNumberOfCalls(2);
+        circuitBreaker.setWaitDurationInOpenState(0, TimeUnit.MILLISECONDS);
+        circuitBreaker.setPermittedCallsInHalfOpenState(2);
+
+        for (int i = 0; i < 2; i++) {
+            circuitBreaker.onError(acquire(circuitBreaker), 0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        final CircuitBreaker.Permission first = acquire(circuitBreaker);
+        final CircuitBreaker.Permission second = acquire(circuitBreaker);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        assertNull(circuitBreaker.tryAcquirePermission());
+
+        circuitBreaker.onSuccess(first, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+        circuitBreaker.onSuccess(second, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    @Test
+    public void ignoresOutcomesOfEarlierStates() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("test", 2);
+        circuitBreaker.setMinimumNumberOfCalls(2);
+        circuitBreaker.setWaitDurationInOpenState(0, TimeUnit.MILLISECONDS);
+        circuitBreaker.setPermittedCallsInHalfOpenState(1);
+
+        //a slow call is still running when the breaker opens
+        final CircuitBreaker.Permission running = acquire(circuitBreaker);
+        for (int i = 0; i < 2; i++) {
+            circuitBreaker.onError(acquire(circuitBreaker), 0);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        final CircuitBreaker.Permission trial = acquire(circuitBreaker);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        //it must neither decide the trial nor use up its budget
+        circuitBreaker.onError(running, 0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+        circuitBreaker.onSuccess(trial, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+    }
+
+    private static CircuitBreaker.Permission acquire(CircuitBreaker circuitBreaker) {
+        final CircuitBreaker.Permission permission = circuitBreaker.tryAcquirePermission();
+        assertNotNull(permission);
+        return permission;
+    }
+
+    @Test
+    public void bulkheadRejectsExcessCalls() {
+        Bulkhead bulkhead = new Bulkhead("test", 2);
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+        assertEquals(1, bulkhead.getRejectedCalls());
+
+        bulkhead.release();
+        assertTrue(bulkhead.tryAcquire());
+        assertEquals(2, bulkhead.getConcurrentCalls());
+    }
+
+    @Test
+    public void clientFailsFastWhenOpen() throws IOException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("unreachable", 1);
+        circuitBreaker.setMinimumNumberOfCalls(1);
+
+        WebServiceClient client = new WebServiceClient();
+        client.setCircuitBreaker("http://localhost:33256/json/", circuitBreaker);
+
+        try {
+            client.call("http://localhost:33256/json/test", WebServiceClientTest.SimpleResponse.class, new JsonEmpty());
+            fail("Expected the connection to fail");
+        } catch (IOException | RemoteInvokationException e) {
+            //expected
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        try {
+            client.call("http://localhost:33256/json/test", WebServiceClientTest.SimpleResponse.class, new JsonEmpty());
+            fail("Expected the circuit breaker to reject the call");
+        } catch (RemoteInvokationException e) {
+            assertEquals(1, circuitBreaker.getNotPermittedCalls());
+        }
+    }
+
+    public static class FailingParameter {
+
+        public String getValue() {
+            throw new AssertionError("not serializable");
+        }
+    }
+
+    @Test
+    public void errorsReleaseHalfOpenPermits() throws IOException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker("unreachable", 1);
+        circuitBreaker.setMinimumNumberOfCalls(1);
+        circuitBreaker.setPermittedCallsInHalfOpenState(1);
+        circuitBreaker.setWaitDurationInOpenState(0, TimeUnit.MILLISECONDS);
+
+        WebServiceClient client = new WebServiceClient();
+        client.setCircuitBreaker("http://localhost:33256/json/", circuitBreaker);
+
+        try {
+            client.call("http://localhost:33256/json/test", WebServiceClientTest.SimpleResponse.class, new JsonEmpty());
+            fail("Expected the connection to fail");
+        } catch (IOException | RemoteInvokationException e) {
+            //expected
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        //takes the only half open permit and fails with an error
+        try {
+            client.call("http://localhost:33256/json/test", WebServiceClientTest.SimpleResponse.class, new FailingParameter());
+            fail("Expected the serialization to fail");
+        } catch (AssertionError e) {
+            //expected
+        } catch (RemoteInvokationException e) {
+            fail("Expected the call to be permitted");
+        }
+        assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        //the breaker permits trial calls again instead of being stuck in half open
+        try {
+            client.call("http://localhost:33256/json/test", WebServiceClientTest.SimpleResponse.class, new JsonEmpty());
+            fail("Expected the connection to fail");
+        } catch (IOException e) {
+            //expected
+        } catch (RemoteInvokationException e) {
+            fail("Expected the call to be permitted");
+        }
+        assertEquals(0, circuitBreaker.getNotPermittedCalls());
+    }
+
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.HandlerList;
+import org.eclipse.jetty.server.handler.HandlerWrapper;
+import org.junit.Assume;
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the bytes the request path of the {@link JsonHandler} allocates for
+ * a large response, before and after responses were written from pooled
+ * buffers. "Before" is the former response path that compressed into a
+ * ByteArrayOutputStream and wrote a copy of it with
+ * {@code response.getOutputStream().write(byte[])}; it is served by the same
+ * server. Only the allocations of the thread handling the request are counted,
+ * so the numbers are dominated by serializing, compressing and writing the
+ * response. Not part of the unit tests, run it with
+ * <pre>mvn test -Dtest=ResponseAllocationBenchmark</pre>
+ *
+ * @author Florian Frankenberger
+ */
+public class ResponseAllocationBenchmark {
+
+    private static final int PORT = 33259;
+    private static final int ITERATIONS = 200;
+
+    public static class Response {
+        public String[] lines;
+    }
+
+    /**
+     * the response path of the handler before this optimization
+     */
+    private static class ByteArrayHandler extends AbstractHandler {
+
+        private final ObjectMapper mapper = SerializationContext.getDefault().getMapper();
+        private final Response response;
+
+        ByteArrayHandler(Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                HttpServletResponse servletResponse) throws IOException, ServletException {
+            if (!target.equals("/json/bytes")) {
+                return;
+            }
+            mapper.readValue(new GZIPInputStream(request.getInputStream()), JsonEmpty.class);
+
+            ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+            try (GZIPOutputStream gzOut = new GZIPOutputStream(bOut)) {
+                mapper.writeValue(gzOut, response);
+            }
+            byte[] payload = bOut.toByteArray();
+
+            servletResponse.setContentType("application/json;charset=utf-8");
+            servletResponse.setContentLength(payload.length);
+            servletResponse.getOutputStream().write(payload);
+            servletResponse.setStatus(HttpServletResponse.SC_OK);
+            baseRequest.setHandled(true);
+        }
+    }
+
+    @Test
+    public void allocationsPerResponse() throws Exception {
+        final java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+
+        final Response response = createResponse();
+        final JsonHandler jsonHandler = new JsonHandler(new ServerMetrics());
+        jsonHandler.putMapping("/json/buffers", JsonEmpty.class, req -> response);
+
+        final LongAdder handlerBytes = new LongAdder();
+        final HandlerWrapper measuringHandler = new HandlerWrapper() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                    HttpServletResponse servletResponse) throws IOException, ServletException {
+                final long start = allocatedBytes(allocationBean);
+                super.handle(target, baseRequest, request, servletResponse);
+                handlerBytes.add(allocatedBytes(allocationBean) - start);
+            }
+        };
+        final HandlerList handlerList = new HandlerList();
+        handlerList.setHandlers(new Handler[]{ new ByteArrayHandler(response), jsonHandler });
+        measuringHandler.setHandler(handlerList);
+
+        final Server server = new Server(PORT);
+        server.setHandler(measuringHandler);
+        server.start();
+        try {
+            final WebServiceClient client = new WebServiceClient();
+            final long before = measure(client, "/json/bytes", response, handlerBytes);
+            final long after = measure(client, "/json/buffers", response, handlerBytes);
+
+            final int compressedSize = compressedSize(response);
+            System.out.println("Bytes allocated by the request path per response of " + compressedSize
+                    + " compressed bytes: before " + before + ", after " + after);
+            //the response is written from pooled buffers and never copied into a byte array
+            assertTrue(after < compressedSize);
+            assertTrue(after < before);
+        } finally {
+            server.stop();
+        }
+    }
+
+    /**
+     * @return the bytes allocated per response, measured after a round to warm up
+     */
+    private static long measure(WebServiceClient client, String path, Response response,
+            LongAdder handlerBytes) throws Exception {
+        Response decoded = null;
+        for (int round = 0; round < 2; round++) {
+            handlerBytes.reset();
+            for (int i = 0; i < ITERATIONS; i++) {
+                decoded = client.call("http://localhost:" + PORT + path, Response.class, new JsonEmpty());
+            }
+        }
+        assertArrayEquals(response.lines, decoded.lines);
+        return handlerBytes.sum() / ITERATIONS;
+    }
+    private static long allocatedBytes(com.sun.management.ThreadMXBean allocationBean) {
+        return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static int compressedSize(Response response) throws IOException {
+        final ByteArrayOutputStream bOut = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzOut = new GZIPOutputStream(bOut)) {
+            new ObjectMapper().writeValue(gzOut, response);
+        }
+        return bOut.size();
+    }
+
+    private static Response createResponse() {
+        final Random random = new Random(42);
+        final Response response = new Response();
+        response.lines = new String[2000];
+        for (int i = 0; i < response.lines.length; i++) {
+            response.lines[i] = Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+        }
+        return response;
+    }
+
+}
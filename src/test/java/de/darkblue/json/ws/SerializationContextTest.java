@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Florian Frankenberger
+ */
+public class SerializationContextTest {
+
+    public static class Unordered {
+        public int zulu = 1;
+        public int alpha = 2;
+        public Map<String, Integer> values = new HashMap<>();
+    }
+
+    @Test
+    public void canonicalProperties() throws IOException {
+        SerializationContext context = new SerializationContext();
+        context.setCanonicalProperties(true);
+
+        Unordered value = new Unordered();
+        for (String key : new String[]{ "delta", "bravo", "charlie", "echo", "alpha" }) {
+            value.values.put(key, key.length());
+        }
+        assertEquals("{\"alpha\":2,\"values\":{\"alpha\":5,\"bravo\":5,\"charlie\":7,\"delta\":5,\"echo\":4},\"zulu\":1}",
+                context.writer().writeValueAsString(value));
+    }
+
+    @Test
+    public void sealedOnFirstUse() {
+        SerializationContext context = new SerializationContext();
+        context.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        context.registerModule(new SimpleModule("test"));
+        context.readerFor(Unordered.class);
+        assertTrue(context.isSealed());
+        assertSame(context.readerFor(Unordered.class), context.readerFor(Unordered.class));
+
+        try {
+            context.configure(SerializationFeature.INDENT_OUTPUT, true);
+            fail("sealed context must not be configurable");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void sharedByServerAndClient() throws IOException, RemoteInvokationException {
+        SerializationContext context = new SerializationContext();
+        context.setCanonicalProperties(true);
+
+        WebServiceServer server = new WebServiceServer();
+        server.setHttpPort(33258);
+        server.setSerializationContext(context);
+        server.addJSONMapping("/json/test", Unordered.class, req -> {
+            req.alpha = req.zulu + 1;
+            return req;
+        });
+        server.start(false);
+
+        try {
+            WebServiceClient client = new WebServiceClient();
+            client.setSerializationContext(context);
+            Unordered req = new Unordered();
+            req.zulu = 41;
+            assertEquals(42, client.call("http://localhost:33258/json/test", Unordered.class, req).alpha);
+            assertTrue(context.isSealed());
+        } finally {
+            server.stop();
+        }
+    }
+
+}
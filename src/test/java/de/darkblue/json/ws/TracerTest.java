@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016 Florian Frankenberger.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package de.darkblue.json.ws;
+
+import de.darkblue.json.ws.WebServiceClientTest.SimpleRequest;
+import de.darkblue.json.ws.WebServiceClientTest.SimpleResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Florian Frankenberger
+ */
+public class TracerTest {
+
+    @Test
+    public void traceparentRoundTrip() {
+        TraceContext context = TraceContext.newRoot(true);
+        TraceContext parsed = TraceContext.parse(context.toTraceparent());
+        assertNotNull(parsed);
+        assertEquals(context.getTraceIdHigh(), parsed.getTraceIdHigh());
+        assertEquals(context.getTraceIdLow(), parsed.getTraceIdLow());
+        assertEquals(context.getSpanId(), parsed.getSpanId());
+        assertTrue(parsed.isSampled());
+
+        assertEquals("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01",
+                TraceContext.parse("00-0af7651916cd43dd8448eb211c80319c-b7ad6b7169203331-01").toTraceparent());
+        assertNull(TraceContext.parse("00-0af7651916cd43dd8448eb211c80319c-b7ad6b71692033xx-01"));
+        assertNull(TraceContext.parse("00-00000000000000000000000000000000-b7ad6b7169203331-01"));
+        assertNull(TraceContext.parse(null));
+    }
+
+    @Test
+    public void propagatesAcrossCalls() throws IOException, RemoteInvokationException {
+        final List<Span> spans = Collections.synchronizedList(new ArrayList<>());
+        final Tracer tracer = new Tracer(spans::addAll);
+        tracer.setSampleRate(1);
+
+        final WebServiceClient client = new WebServiceClient();
+        client.setTracer(tracer);
+
+        WebServiceServer server = new WebServiceServer();
+        server.setHttpPort(33257);
+        server.setTracer(tracer);
+        server.addJSONMapping("/json/outer", SimpleRequest.class, req -> {
+            try {
+                return client.call("http://localhost:33257/json/inner", SimpleResponse.class, req);
+            } catch (IOException | RemoteInvokationException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        server.addJSONMapping("/json/inner", SimpleRequest.class, req -> {
+            SimpleResponse res = new SimpleResponse();
+            res.retName = req.name;
+            return res;
+        });
+        server.start(false);
+
+        try {
+            SimpleRequest req = new SimpleRequest();
+            req.name = "foobar2006";
+            assertEquals(req.name, client.call("http://localhost:33257/json/outer", SimpleResponse.class, req).retName);
+        } finally {
+            server.stop();
+            tracer.close();
+        }
+
+        assertEquals(4, spans.size());
+        final String traceId = spans.get(0).getContext().getTraceId();
+        for (Span span : spans) {
+            assertEquals(traceId, span.getContext().getTraceId());
+            assertEquals(200, span.getStatus());
+        }
+
+        //the spans form a single chain: client outer -> server outer -> client inner -> server inner
+        Span span = find(spans, 0);
+        for (Span.Kind kind : new Span.Kind[] { Span.Kind.CLIENT, Span.Kind.SERVER, Span.Kind.CLIENT, Span.Kind.SERVER }) {
+            assertNotNull(span);
+            assertEquals(kind, span.getKind());
+            span = find(spans, span.getContext().getSpanId());
+        }
+        assertNull(span);
+    }
+
+    private static Span find(List<Span> spans, long parentSpanId) {
+        for (Span span : spans) {
+            if (span.getParentSpanId() == parentSpanId) {
+                return span;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void failedConnectFinishesSpan() throws IOException {
+        final List<Span> spans = Collections.synchronizedList(new ArrayList<>());
+        final Tracer tracer = new Tracer(spans::addAll);
+        tracer.setSampleRate(1);
+
+        final WebServiceClient client = new WebServiceClient();
+        client.setTracer(tracer);
+        try {
+            client.call("http://localhost:33257/json/test", SimpleResponse.class, new SimpleRequest());
+            fail("nothing listens on the port");
+        } catch (IOException | RemoteInvokationException e) {
+            //expected
+        } finally {
+            tracer.close();
+        }
+
+        assertEquals(1, spans.size());
+        assertEquals(Span.Kind.CLIENT, spans.get(0).getKind());
+        assertEquals(0, spans.get(0).getStatus());
+    }
+
+    @Test
+    public void serverTimingHeader() throws IOException {
+        WebServiceServer server = new WebServiceServer();
+        server.setHttpPort(33257);
+        server.setServerTimingEnabled(true);
+        server.addJSONMapping("/json/test", JsonEmpty.class, req -> new JsonEmpty());
+        server.start(false);
+
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:33257/json/test").openConnection();
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream out = new GZIPOutputStream(connection.getOutputStream())) {
+                out.write("{}".getBytes("UTF-8"));
+            }
+            assertEquals(200, connection.getResponseCode());
+            final String serverTiming = connection.getHeaderField("Server-Timing");
+            assertNotNull(serverTiming);
+            assertTrue(serverTiming.matches("decompress;dur=\\d+\\.\\d{3}, parse;dur=\\d+\\.\\d{3}, "
+                    + "invoke;dur=\\d+\\.\\d{3}, serialize;dur=\\d+\\.\\d{3}"));
+            connection.disconnect();
+        } finally {
+            server.stop();
+        }
+    }
+
+}
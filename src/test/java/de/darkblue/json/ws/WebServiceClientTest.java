@@ -19,11 +19,26 @@
 package de.darkblue.json.ws;
 
 import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  *
@@ -81,6 +96,7 @@ public class WebServiceClientTest {
         }
     }
 
+    @RemoteService
     public static interface Service {
 
         SimpleResponse remoteCallMe(SimpleRequest request);
@@ -91,6 +107,12 @@ public class WebServiceClientTest {
 
     }
 
+    public static interface UnannotatedService {
+
+        SimpleResponse remoteCallMe(SimpleRequest request);
+
+    }
+
     @Test
     public void simpleCallTest() throws IOException, MalformedURLException, RemoteInvokationException {
         WebServiceServer server = new WebServiceServer();
@@ -150,4 +172,314 @@ public class WebServiceClientTest {
 
     }
 
+    @Test
+    public void errorMappingTest() throws IOException, MalformedURLException, RemoteInvokationException {
+        WebServiceServer server = new WebServiceServer();
+        server.setHttpPort(33255);
+        server.addJSONMapping("/json/notFound", SimpleRequest.class, req -> {
+            throw new WebServiceException(404, "not_found", "No entry named " + req.name);
+        });
+        server.addJSONMapping("/json/fail", SimpleRequest.class, req -> {
+            throw new IllegalStateException("broken");
+        });
+        server.start(false);
+
+        try {
+            WebServiceClient client = new WebServiceClient();
+            SimpleRequest req = new SimpleRequest();
+            req.name = "foobar2002";
+
+            try {
+                client.call("http://localhost:33255/json/notFound", SimpleResponse.class, req);
+                fail("Expected a RemoteServiceException");
+            } catch (RemoteServiceException e) {
+                assertEquals(404, e.getStatus());
+                assertEquals("not_found", e.getError());
+                assertEquals("No entry named foobar2002", e.getMessage());
+            }
+
+            try {
+                client.call("http://localhost:33255/json/fail", SimpleResponse.class, req);
+                fail("Expected a RemoteServiceException");
+            } catch (RemoteServiceException e) {
+                assertEquals(500, e.getStatus());
+                assertEquals("internal_error", e.getError());
+                assertEquals("Internal server error", e.getMessage());
+            }
+
+            try {
+                client.call("http://localhost:33255/json/notFound", SimpleResponse.class, "no object");
+                fail("Expected a RemoteServiceException");
+            } catch (RemoteServiceException e) {
+                assertEquals(400, e.getStatus());
+                assertEquals("bad_request", e.getError());
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void requestLimitsTest() throws IOException, MalformedURLException, RemoteInvokationException {
+        WebServiceServer server = new WebServiceServer();
+        server.setHttpPort(33255);
+        server.addJSONMapping("/json/strings", SimpleRequest.class, req -> new SimpleResponse());
+        server.addJSONMapping("/json/depth", SimpleRequest.class, req -> new SimpleResponse());
+        server.addJSONMapping("/json/size", SimpleRequest.class, req -> new SimpleResponse());
+
+        RequestLimits stringLimits = new RequestLimits();
+        stringLimits.setMaxStringLength(100);
+        server.setRequestLimits("/json/strings", stringLimits);
+        RequestLimits depthLimits = new RequestLimits();
+        depthLimits.setMaxNestingDepth(2);
+        server.setRequestLimits("/json/depth", depthLimits);
+        RequestLimits sizeLimits = new RequestLimits();
+        sizeLimits.setMaxDecompressedSize(1000);
+        server.setRequestLimits("/json/size", sizeLimits);
+        server.start(false);
+
+        try {
+            WebServiceClient client = new WebServiceClient();
+            SimpleRequest req = new SimpleRequest();
+            StringBuilder name = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                name.append('x');
+            }
+            req.name = name.toString();
+            req.payload.add(new Payload());
+
+            for (String path : new String[]{ "strings", "depth", "size" }) {
+                try {
+                    client.call("http://localhost:33255/json/" + path, SimpleResponse.class, req);
+                    fail("Expected the request to " + path + " to be rejected");
+                } catch (RemoteServiceException e) {
+                    assertEquals(413, e.getStatus());
+                    assertEquals("payload_too_large", e.getError());
+                }
+            }
+            assertEquals(3, server.getMetrics().getRejectedRequests());
+
+            req.name = "foobar2003";
+            client.call("http://localhost:33255/json/size", SimpleResponse.class, req);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void oversizedStringTest() throws IOException, MalformedURLException, RemoteInvokationException {
+        WebServiceServer server = new WebServiceServer();
+        server.setHttpPort(33255);
+        server.addJSONMapping("/json/test", SimpleRequest.class, req -> new SimpleResponse());
+        server.addJSONMapping("/json/unlimited", SimpleRequest.class, req -> new SimpleResponse());
+        RequestLimits unlimited = new RequestLimits();
+        unlimited.setMaxStringLength(-1);
+        server.setRequestLimits("/json/unlimited", unlimited);
+        server.start(false);
+
+        try {
+            WebServiceClient client = new WebServiceClient();
+            SimpleRequest req = new SimpleRequest();
+            char[] name = new char[30 * 1024 * 1024];
+            Arrays.fill(name, 'x');
+            req.name = new String(name);
+
+            //rejected either by the string length limit or by jackson's own constraint
+            for (String path : new String[]{ "test", "unlimited" }) {
+                try {
+                    client.call("http://localhost:33255/json/" + path, SimpleResponse.class, req);
+                    fail("Expected the request to " + path + " to be rejected");
+                } catch (RemoteServiceException e) {
+                    assertEquals(413, e.getStatus());
+                    assertEquals("payload_too_large", e.getError());
+                }
+            }
+            assertEquals(2, server.getMetrics().getRejectedRequests());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void generatedCodeTest() throws IOException, MalformedURLException, RemoteInvokationException {
+        assertNotNull(GeneratedCode.loadRoutes(ServiceImpl.class));
+        assertNotNull(GeneratedCode.stubConstructor(Service.class));
+
+        WebServiceServer server = new WebServiceServer();
+        server.setHttpPort(33255);
+        server.addServiceImplementation(new ServiceImpl());
+        server.start(false);
+
+        try {
+            WebServiceClient client = new WebServiceClient();
+            Service service = client.proxyRemoteService("http://localhost:33255/json", Service.class);
+            assertFalse(Proxy.isProxyClass(service.getClass()));
+            UnannotatedService unannotatedService = client.proxyRemoteService("http://localhost:33255/json", UnannotatedService.class);
+            assertTrue(Proxy.isProxyClass(unannotatedService.getClass()));
+
+            SimpleRequest req = new SimpleRequest();
+            req.name = "foobar2004";
+            assertEquals(req.name, service.remoteCallMe(req).retName);
+            assertEquals(req.name, unannotatedService.remoteCallMe(req).retName);
+            service.sth();
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void warmUpTest() throws IOException, MalformedURLException, RemoteInvokationException {
+        final AtomicInteger warmUpCalls = new AtomicInteger();
+        final List<Span> spans = Collections.synchronizedList(new ArrayList<>());
+        final Tracer tracer = new Tracer(spans::addAll);
+        tracer.setSampleRate(1);
+        final WebServiceServer server = new WebServiceServer();
+        server.setHttpPort(33255);
+        server.setHealthPath("/health");
+        server.setTracer(tracer);
+        server.setWarmUpIterations(5);
+        server.addJSONMapping("/json/test", SimpleRequest.class, req -> {
+            //warm up requests are handled like real ones, including their trace context
+            if (!server.isReady() && TraceContext.current() != null) {
+                warmUpCalls.incrementAndGet();
+            }
+            SimpleResponse res = new SimpleResponse();
+            res.retName = req.name;
+            return res;
+        });
+        //a string can't be sampled, so the mapping is not warmed up at all
+        final AtomicInteger stringCalls = new AtomicInteger();
+        server.addJSONMapping("/json/string", String.class, req -> {
+            stringCalls.incrementAndGet();
+            return new SimpleResponse();
+        });
+        assertFalse(server.isReady());
+        server.start(false);
+
+        try {
+            assertTrue(server.isReady());
+            assertEquals(5, warmUpCalls.get());
+            assertEquals(0, stringCalls.get());
+
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:33255/health").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            connection.disconnect();
+
+            WebServiceClient client = new WebServiceClient();
+            SimpleRequest req = new SimpleRequest();
+            req.name = "foobar2005";
+            assertEquals(req.name, client.call("http://localhost:33255/json/test", SimpleResponse.class, req).retName);
+            assertEquals(5, warmUpCalls.get());
+        } finally {
+            server.stop();
+            tracer.close();
+        }
+        assertFalse(server.isReady());
+        //only the real request is exported
+        assertEquals(1, spans.size());
+    }
+
+    @Test
+    public void gracefulShutdownTest() throws IOException, InterruptedException {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final WebServiceServer server = new WebServiceServer();
+        server.setHttpPort(33255);
+        server.addJSONMapping("/json/test", SimpleRequest.class, req -> {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            SimpleResponse res = new SimpleResponse();
+            res.retName = req.name;
+            return res;
+        });
+        server.start(false);
+
+        final WebServiceClient client = new WebServiceClient();
+        final AtomicReference<Object> result = new AtomicReference<>();
+        Thread caller = new Thread(() -> {
+            SimpleRequest req = new SimpleRequest();
+            req.name = "foobar2007";
+            try {
+                result.set(client.call("http://localhost:33255/json/test", SimpleResponse.class, req).retName);
+            } catch (IOException | RemoteInvokationException e) {
+                result.set(e);
+            }
+        });
+        caller.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        assertEquals(1, server.getMetrics().getInFlightRequests());
+
+        //new connections must be refused while the request in flight is drained
+        final AtomicBoolean refused = new AtomicBoolean();
+        Thread newcomer = new Thread(() -> {
+            try {
+                while (!server.getMetrics().isDraining()) {
+                    Thread.sleep(1);
+                }
+                //the connectors stop accepting shortly after draining has begun
+                final long deadline = System.currentTimeMillis() + 2000;
+                while (!refused.get() && System.currentTimeMillis() < deadline) {
+                    try {
+                        new Socket("localhost", 33255).close();
+                        Thread.sleep(1);
+                    } catch (IOException e) {
+                        refused.set(true);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                release.countDown();
+            }
+        });
+        newcomer.start();
+
+        server.stop();
+        caller.join(5000);
+        newcomer.join(5000);
+
+        assertEquals("foobar2007", result.get());
+        assertTrue(refused.get());
+        assertEquals(0, server.getMetrics().getInFlightRequests());
+        assertEquals(0, server.getMetrics().getAbandonedRequests());
+        assertFalse(server.getMetrics().isDraining());
+    }
+
+    @Test
+    public void shutdownTimeoutTest() throws IOException, InterruptedException {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final WebServiceServer server = new WebServiceServer();
+        server.setHttpPort(33255);
+        server.setShutdownTimeout(100, TimeUnit.MILLISECONDS);
+        server.addJSONMapping("/json/test", SimpleRequest.class, req -> {
+            entered.countDown();
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new SimpleResponse();
+        });
+        server.start(false);
+
+        final WebServiceClient client = new WebServiceClient();
+        Thread caller = new Thread(() -> {
+            try {
+                client.call("http://localhost:33255/json/test", SimpleResponse.class, new SimpleRequest());
+            } catch (IOException | RemoteInvokationException e) {
+                //expected, the request is cut off
+            }
+        });
+        caller.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        server.stop();
+        caller.join(5000);
+        assertEquals(1, server.getMetrics().getAbandonedRequests());
+    }
+
 }